@@ -26,15 +26,10 @@ public class CheckPoolExample {
     public static void main(String[] args) {
         FMDB db = FMDB.getInstance();
         Card raigeki = db.getCard(337);
-        Set<Duelist> duelists = db.getAllDuelists();
-        Set<Duelist> dropsRaigeki = new HashSet<>();
-        for (Duelist d : duelists) {
-            for(Pool.Type type : new Pool.Type[] {Pool.Type.SA_POW, Pool.Type.SA_TEC, Pool.Type.BCD}) {
-                Pool pool = d.getPool(type);
-                if(pool.getEntry(raigeki) != null) {
-                    dropsRaigeki.add(d);
-                }
-            }
+        //sources are sorted from the most likely drop to the least likely
+        Set<Duelist> dropsRaigeki = new LinkedHashSet<>();
+        for (DropSource source : db.getDropSources(raigeki)) {
+            dropsRaigeki.add(source.getDuelist());
         }
         System.out.println(dropsRaigeki);
     }
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the per-pair cost of fusing through {@link Card} objects with the bulk id APIs of
+ * {@link FMDB}: {@value #PAIRS} random pairs of cards, and the same pairs grouped into 5-card hands.
+ * @author sg4e
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusionBenchmark {
+    
+    static final int PAIRS = 1 << 16;
+    static final int HAND_SIZE = 5;
+    static final int HANDS = PAIRS / 10;
+    
+    private FMDB db;
+    private Card[] firstCards, secondCards;
+    private int[] first, second, out;
+    private Card[] handCards;
+    private int[] handIds;
+    private final long[] rows = new long[HAND_SIZE];
+    
+    @Setup
+    public void setup() {
+        db = FMDB.getInstance();
+        List<Card> cards = new ArrayList<>(db.getAllCards());
+        cards.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        Random random = new Random(0);
+        firstCards = new Card[PAIRS];
+        secondCards = new Card[PAIRS];
+        first = new int[PAIRS];
+        second = new int[PAIRS];
+        out = new int[PAIRS];
+        for(int i = 0; i < PAIRS; i++) {
+            firstCards[i] = cards.get(random.nextInt(cards.size()));
+            secondCards[i] = cards.get(random.nextInt(cards.size()));
+            first[i] = firstCards[i].getId();
+            second[i] = secondCards[i].getId();
+        }
+        //a 5-card hand has 10 pairs
+        handCards = new Card[HANDS * HAND_SIZE];
+        handIds = new int[HANDS * HAND_SIZE];
+        for(int i = 0; i < handCards.length; i++) {
+            handCards[i] = cards.get(random.nextInt(cards.size()));
+            handIds[i] = handCards[i].getId();
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void cardFuseOrNull(Blackhole blackhole) {
+        for(int i = 0; i < PAIRS; i++) {
+            blackhole.consume(firstCards[i].fuseOrNull(secondCards[i]));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void dbFuseOrNull(Blackhole blackhole) {
+        for(int i = 0; i < PAIRS; i++) {
+            blackhole.consume(db.fuseOrNull(firstCards[i], secondCards[i]));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int[] fuseAll() {
+        db.fuseAll(first, second, out);
+        return out;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int handPairsWithCards() {
+        int pairs = 0;
+        for(int h = 0; h < handCards.length; h += HAND_SIZE) {
+            for(int i = h; i < h + HAND_SIZE; i++) {
+                for(int j = i + 1; j < h + HAND_SIZE; j++) {
+                    if(handCards[i].fuseOrNull(handCards[j]) != null)
+                        pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int handPairsWithAdjacency() {
+        int pairs = 0;
+        int[] hand = new int[HAND_SIZE];
+        for(int h = 0; h < handIds.length; h += HAND_SIZE) {
+            System.arraycopy(handIds, h, hand, 0, HAND_SIZE);
+            pairs += db.fusionAdjacency(hand, HAND_SIZE, rows);
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link SeedSearchBackend}s on the same search: the first
+ * {@value #SEEDS} seeds after boot, looking for a 5-card opening hand.
+ * @author sg4e
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeedSearchBenchmark {
+    
+    static final int SEEDS = 1 << 16;
+    
+    // the deck and opening hand from the SeedSearchExample in the examples directory
+    static final int[] PLAYER_DECK = new int[] {
+        421, 397, 285, 208, 549, 289, 505, 179, 209, 485, 156, 387, 436, 206, 237, 635, 178, 410, 488, 75,
+        336, 75, 308, 176, 268, 105, 209, 549, 177, 589, 333, 9, 267, 402, 516, 608, 469, 394, 198, 547
+    };
+    static final int[] OPENING_HAND = new int[] { 421, 397, 285, 208, 549 };
+    
+    @Param({ "scalar", "table", "incremental", "vector" })
+    public String backend;
+    
+    private SeedSearchBackend.Evaluator evaluator;
+    
+    @Setup
+    public void setup() {
+        FMDB db = FMDB.getInstance();
+        Deck deck = new Deck(Arrays.stream(PLAYER_DECK).mapToObj(db::getCard).collect(Collectors.toList()));
+        deck.sort(Deck.TYPE_ORDER);
+        int[] startingDeck = deck.toList().stream().mapToInt(Card::getId).toArray();
+        //throws if the vector backend is unavailable; run on JDK 17+ with --add-modules jdk.incubator.vector
+        evaluator = SeedSearchBackend.forName(backend).newEvaluator(startingDeck, OPENING_HAND);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(SEEDS)
+    public void evaluate(Blackhole blackhole) {
+        evaluator.evaluate(new RNG().getSeed(), SEEDS, blackhole::consume);
+    }
+}
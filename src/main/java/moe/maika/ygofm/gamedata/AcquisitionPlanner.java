@@ -0,0 +1,363 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the cheapest way to get each card onto the field: dropping it directly, or farming the
+ * materials of a fusion or {@link Ritual} and making it in a duel. Costs are the expected number
+ * of duels from {@link FarmingCost}, and a recipe costs the sum of its materials, since every
+ * material of an acquisition tree has to be farmed separately.
+ * <p>
+ * Recipes form an AND-OR graph over card ids, which is solved for every card at once with
+ * Knuth's generalization of Dijkstra's algorithm: a priority queue settles cards from the
+ * cheapest up, and a recipe is priced as soon as its last material is settled. Each card keeps a
+ * back-pointer to its best recipe, and the resulting {@link Plan} trees are memoized. Use
+ * {@link #getInstance()}; instances are immutable and thread-safe.
+ * @author sg4e
+ */
+public final class AcquisitionPlanner {
+    
+    private static final int DROP = -1;
+    
+    private final FMDB db;
+    private final FarmingCost costs;
+    private final double[] cost;
+    // the recipe each card's cost comes from, or DROP
+    private final int[] via;
+    // recipe -> result card id, and materials in recipeMaterials[recipeStart[r] .. recipeStart[r + 1])
+    private final int[] recipeResult;
+    private final int[] recipeStart;
+    private final int[] recipeMaterials;
+    // recipe -> ritual, or null for fusions
+    private final Ritual[] recipeRitual;
+    private final Plan[] plans;
+    
+    private static final class Holder {
+        private static final AcquisitionPlanner INSTANCE = new AcquisitionPlanner(FMDB.getInstance(), FarmingCost.getInstance());
+    }
+    
+    private static final class Tentative implements Comparable<Tentative> {
+        final double cost;
+        final int card;
+
+        Tentative(double cost, int card) {
+            this.cost = cost;
+            this.card = card;
+        }
+
+        @Override
+        public int compareTo(Tentative o) {
+            int c = Double.compare(cost, o.cost);
+            return c != 0 ? c : Integer.compare(card, o.card);
+        }
+    }
+    
+    private AcquisitionPlanner(FMDB db, FarmingCost costs) {
+        this.db = db;
+        this.costs = costs;
+        int cardCount = db.getAllCards().stream().mapToInt(Card::getId).max().orElse(0) + 1;
+        int[] fusions = db.getFusionTriples();
+        List<Ritual> rituals = new ArrayList<>(db.getAllRituals());
+        rituals.sort((a, b) -> Integer.compare(a.getRitualCardId(), b.getRitualCardId()));
+        int recipeCount = fusions.length / 3 + rituals.size();
+        recipeResult = new int[recipeCount];
+        recipeStart = new int[recipeCount + 1];
+        recipeMaterials = new int[fusions.length / 3 * 2 + rituals.size() * 4];
+        recipeRitual = new Ritual[recipeCount];
+        int r = 0, m = 0;
+        for(int i = 0; i < fusions.length; i += 3, r++) {
+            recipeStart[r] = m;
+            recipeMaterials[m++] = fusions[i];
+            recipeMaterials[m++] = fusions[i + 1];
+            recipeResult[r] = fusions[i + 2];
+        }
+        for(Ritual ritual : rituals) {
+            recipeStart[r] = m;
+            recipeMaterials[m++] = ritual.getRitualCardId();
+            recipeMaterials[m++] = ritual.getMaterial1();
+            recipeMaterials[m++] = ritual.getMaterial2();
+            recipeMaterials[m++] = ritual.getMaterial3();
+            recipeResult[r] = ritual.getResultId();
+            recipeRitual[r++] = ritual;
+        }
+        recipeStart[r] = m;
+        
+        //card id -> recipes it is a material of, counting each recipe once per distinct material
+        int[] remaining = new int[recipeCount];
+        int[] usesStart = new int[cardCount + 1];
+        for(r = 0; r < recipeCount; r++) {
+            for(int i = recipeStart[r]; i < recipeStart[r + 1]; i++) {
+                if(isFirstOccurrence(r, i)) {
+                    usesStart[recipeMaterials[i] + 1]++;
+                    remaining[r]++;
+                }
+            }
+        }
+        for(int card = 0; card < cardCount; card++) {
+            usesStart[card + 1] += usesStart[card];
+        }
+        int[] uses = new int[usesStart[cardCount]];
+        int[] fill = Arrays.copyOf(usesStart, cardCount);
+        for(r = 0; r < recipeCount; r++) {
+            for(int i = recipeStart[r]; i < recipeStart[r + 1]; i++) {
+                if(isFirstOccurrence(r, i))
+                    uses[fill[recipeMaterials[i]]++] = r;
+            }
+        }
+        
+        cost = new double[cardCount];
+        via = new int[cardCount];
+        Arrays.fill(via, DROP);
+        PriorityQueue<Tentative> queue = new PriorityQueue<>();
+        for(Card card : db.getAllCards()) {
+            cost[card.getId()] = costs.getBestExpectedDuels(card, 1);
+            if(cost[card.getId()] < Double.POSITIVE_INFINITY)
+                queue.add(new Tentative(cost[card.getId()], card.getId()));
+        }
+        cost[0] = Double.POSITIVE_INFINITY;
+        boolean[] settled = new boolean[cardCount];
+        while(!queue.isEmpty()) {
+            Tentative next = queue.poll();
+            int card = next.card;
+            if(settled[card] || next.cost > cost[card])
+                continue;
+            settled[card] = true;
+            for(int u = usesStart[card]; u < usesStart[card + 1]; u++) {
+                r = uses[u];
+                if(--remaining[r] > 0)
+                    continue;
+                //every material is settled, so the recipe's cost is final
+                double total = 0;
+                for(int i = recipeStart[r]; i < recipeStart[r + 1]; i++) {
+                    total += cost[recipeMaterials[i]];
+                }
+                int result = recipeResult[r];
+                if(!settled[result] && total < cost[result]) {
+                    cost[result] = total;
+                    via[result] = r;
+                    queue.add(new Tentative(total, result));
+                }
+            }
+        }
+        plans = new Plan[cardCount];
+    }
+    
+    private boolean isFirstOccurrence(int recipe, int index) {
+        for(int i = recipeStart[recipe]; i < index; i++) {
+            if(recipeMaterials[i] == recipeMaterials[index])
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the planner for the game's drop pools, fusions and rituals, solving it for every
+     * card on first use.
+     * @return the acquisition planner
+     */
+    public static AcquisitionPlanner getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    /**
+     * Returns the expected number of duels it takes to farm everything needed for the
+     * cheapest way to get a card.
+     * @param card a card
+     * @return the expected number of duels; infinite if the card can't be obtained at all
+     */
+    public double getCost(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        return card.getId() < cost.length ? cost[card.getId()] : Double.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Returns the cheapest way to get a card.
+     * @param card a card
+     * @return the acquisition tree of the card, or null if the card can't be obtained at all
+     */
+    public Plan getPlan(Card card) {
+        if(Double.isInfinite(getCost(card)))
+            return null;
+        return plan(card.getId());
+    }
+    
+    /**
+     * Returns the cheapest way to get each card that can be obtained.
+     * @return the acquisition tree of every obtainable card, by card id
+     */
+    public Map<Card,Plan> getAllPlans() {
+        Map<Card,Plan> all = new LinkedHashMap<>();
+        for(int id = 1; id < cost.length; id++) {
+            if(cost[id] < Double.POSITIVE_INFINITY)
+                all.put(db.getCard(id), plan(id));
+        }
+        return all;
+    }
+    
+    private Plan plan(int id) {
+        //plans are immutable, so a race just builds an equal plan twice
+        Plan plan = plans[id];
+        if(plan != null)
+            return plan;
+        int r = via[id];
+        if(r == DROP) {
+            plan = new Plan(db.getCard(id), cost[id], costs.getBestSources(db.getCard(id), 1, 1).get(0), null, Collections.emptyList());
+        }
+        else {
+            List<Plan> materials = new ArrayList<>(recipeStart[r + 1] - recipeStart[r]);
+            for(int i = recipeStart[r]; i < recipeStart[r + 1]; i++) {
+                materials.add(plan(recipeMaterials[i]));
+            }
+            plan = new Plan(db.getCard(id), cost[id], null, recipeRitual[r], Collections.unmodifiableList(materials));
+        }
+        plans[id] = plan;
+        return plan;
+    }
+    
+    /**
+     * How a card in a {@link Plan} is obtained.
+     */
+    public static enum Method {
+        /**
+         * The card is farmed from a drop pool.
+         */
+        DROP,
+        /**
+         * The card is the result of fusing two materials.
+         */
+        FUSION,
+        /**
+         * The card is summoned by a ritual card and three materials.
+         */
+        RITUAL
+    }
+    
+    /**
+     * An acquisition tree: a card, how it is obtained and, unless it is dropped, the plans of
+     * its materials. Instances are immutable, and plans for the same card are shared between trees.
+     */
+    public static class Plan {
+        private final Card card;
+        private final double cost;
+        private final FarmingCost.Estimate source;
+        private final Ritual ritual;
+        private final List<Plan> materials;
+
+        private Plan(Card card, double cost, FarmingCost.Estimate source, Ritual ritual, List<Plan> materials) {
+            this.card = card;
+            this.cost = cost;
+            this.source = source;
+            this.ritual = ritual;
+            this.materials = materials;
+        }
+        
+        /**
+         * Returns the card this plan obtains.
+         * @return the card
+         */
+        public Card getCard() {
+            return card;
+        }
+        
+        /**
+         * Returns the expected number of duels to farm every card dropped in this tree.
+         * @return the expected number of duels
+         */
+        public double getCost() {
+            return cost;
+        }
+        
+        /**
+         * Returns how the card is obtained.
+         * @return the method
+         */
+        public Method getMethod() {
+            if(source != null)
+                return Method.DROP;
+            return ritual == null ? Method.FUSION : Method.RITUAL;
+        }
+        
+        /**
+         * Returns the best place to farm the card if it is dropped.
+         * @return the drop source, or null if the card is fused or summoned by a ritual
+         */
+        public FarmingCost.Estimate getSource() {
+            return source;
+        }
+        
+        /**
+         * Returns the ritual that summons the card.
+         * @return the ritual, or null if the card isn't summoned by a ritual
+         */
+        public Ritual getRitual() {
+            return ritual;
+        }
+        
+        /**
+         * Returns the plans of the materials: the two fusion materials, or the ritual card
+         * followed by the three ritual materials.
+         * @return the plans of the materials, empty if the card is dropped
+         */
+        public List<Plan> getMaterials() {
+            return materials;
+        }
+        
+        /**
+         * Returns the cards to farm for this plan, with the number of copies of each.
+         * @return the number of copies of each dropped card in the tree
+         */
+        public Map<Card,Integer> getDrops() {
+            Map<Card,Integer> drops = new LinkedHashMap<>();
+            addDrops(drops);
+            return drops;
+        }
+        
+        private void addDrops(Map<Card,Integer> drops) {
+            if(source != null)
+                drops.merge(card, 1, Integer::sum);
+            materials.forEach(m -> m.addDrops(drops));
+        }
+
+        @Override
+        public String toString() {
+            switch(getMethod()) {
+                case DROP:
+                    return card.getName();
+                case FUSION:
+                    return card.getName() + " = " + materials;
+                default:
+                    return card.getName() + " = " + materials.get(0).getCard().getName() + materials.subList(1, materials.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * An on-disk index of the AI decks that a duelist gets over a window of deltas. For every delta,
+ * it stores the AI's shuffled deck, which gives both the composition of the deck and the order
+ * in which the AI draws it, so that questions such as "which deltas give Heishin no Raigeki and
+ * no Meteor Black Dragon in the first hand?" are answered by scanning the index instead of
+ * simulating millions of seeds.
+ * <p>
+ * A delta is the RNG state at the start of the duel, counted from an initial seed, which is the
+ * same state {@link SeedSearch} finds. The game shuffles the player's deck (320 {@code rand()}
+ * calls), then generates the AI's deck, then shuffles it. Each delta takes 40 bytes: the shuffled
+ * deck as indices into the duelist's deck pool.
+ * <p>
+ * Indices are created with a {@link Builder}, which builds the indices of several duelists in one
+ * pass over the RNG, and reopened with {@link #open(Path)}. Queries run in parallel and return a
+ * {@link DeltaSet}. Instances are immutable and thread-safe.
+ * @author sg4e
+ */
+public final class AiDeckIndex {
+    
+    private static final int MAGIC = 0x59474149;
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = Deck.DECK_SIZE;
+    private static final int HEADER_INTS = 8;
+    private static final int SHUFFLE_CALLS = 320;
+    /**
+     * How many consecutive deltas a worker thread builds or queries at once. A multiple of 64,
+     * so that workers fill disjoint words of a {@link DeltaSet}.
+     */
+    private static final int BLOCK_SIZE = 1 << 14;
+    /**
+     * The largest window that fits in one mapped file.
+     */
+    public static final int MAX_WINDOW = Integer.MAX_VALUE / RECORD_SIZE;
+    
+    private final Path file;
+    private final Duelist duelist;
+    private final RNG initialSeed;
+    private final int start, end;
+    private final Card[] poolCards;
+    private final int[] poolIndexById;
+    private final ByteBuffer records;
+    
+    private AiDeckIndex(Path file, Duelist duelist, RNG initialSeed, int start, int end, Card[] poolCards, ByteBuffer records) {
+        this.file = file;
+        this.duelist = duelist;
+        this.initialSeed = initialSeed;
+        this.start = start;
+        this.end = end;
+        this.poolCards = poolCards;
+        this.records = records;
+        int maxId = Arrays.stream(poolCards).mapToInt(Card::getId).max().orElse(0);
+        poolIndexById = new int[maxId + 1];
+        Arrays.fill(poolIndexById, -1);
+        for(int i = 0; i < poolCards.length; i++) {
+            poolIndexById[poolCards[i].getId()] = i;
+        }
+    }
+    
+    /**
+     * Opens an index that was built by a {@link Builder}. The records are memory-mapped rather
+     * than read into the heap.
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static AiDeckIndex open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if(header.getInt() != MAGIC)
+                throw new IOException("Not an AI deck index: " + file);
+            int version = header.getInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported AI deck index version " + version + ": " + file);
+            Duelist duelist = FMDB.getInstance().getDuelist(header.getInt());
+            RNG initialSeed = new RNG(header.getInt(), header.getInt());
+            int start = header.getInt();
+            int end = header.getInt();
+            int poolSize = header.getInt();
+            if(duelist == null || start > end || (long) end - start > MAX_WINDOW || poolSize < 0 || poolSize > 255)
+                throw new IOException("Corrupt AI deck index header: " + file);
+            ByteBuffer ids = ByteBuffer.allocate(poolSize * Integer.BYTES);
+            readFully(channel, ids, header.capacity());
+            ids.flip();
+            Card[] poolCards = new Card[poolSize];
+            for(int i = 0; i < poolSize; i++) {
+                poolCards[i] = FMDB.getInstance().getCard(ids.getInt());
+            }
+            long offset = header.capacity() + ids.capacity();
+            long size = ((long) end - start) * RECORD_SIZE;
+            if(channel.size() < offset + size)
+                throw new IOException("Truncated AI deck index: " + file);
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            return new AiDeckIndex(file, duelist, initialSeed, start, end, poolCards, records);
+        }
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0)
+                throw new IOException("Unexpected end of AI deck index");
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+    
+    /**
+     * Returns the name of the file that a {@link Builder} writes a duelist's index to.
+     * @param duelist a duelist
+     * @return the file name of the duelist's index
+     */
+    public static String getFileName(Duelist duelist) {
+        return "duelist-" + duelist.getId() + ".aidx";
+    }
+    
+    /**
+     * Returns the file this index is stored in.
+     * @return the index file
+     */
+    public Path getFile() {
+        return file;
+    }
+    
+    /**
+     * Returns the duelist whose decks are indexed.
+     * @return the duelist
+     */
+    public Duelist getDuelist() {
+        return duelist;
+    }
+    
+    /**
+     * Returns the RNG state that deltas are counted from.
+     * @return a copy of the initial seed
+     */
+    public RNG getInitialSeed() {
+        return new RNG(initialSeed);
+    }
+    
+    /**
+     * Returns the first indexed delta.
+     * @return the start of the window, inclusive
+     */
+    public int getStart() {
+        return start;
+    }
+    
+    /**
+     * Returns the delta after the last indexed delta.
+     * @return the end of the window, exclusive
+     */
+    public int getEnd() {
+        return end;
+    }
+    
+    /**
+     * Returns the AI's shuffled deck at the given delta, as it would be drawn from.
+     * @param delta an indexed delta
+     * @return the AI's deck at the start of the duel
+     */
+    public Deck getDeck(int delta) {
+        View view = new View();
+        view.moveTo(checkDelta(delta));
+        List<Card> cards = new ArrayList<>(Deck.DECK_SIZE);
+        for(int i = 0; i < Deck.DECK_SIZE; i++) {
+            cards.add(view.get(i));
+        }
+        return new Deck(cards);
+    }
+    
+    /**
+     * Returns all indexed deltas whose AI deck matches the predicate.
+     * @param predicate a condition on the AI's deck
+     * @return the matching deltas
+     */
+    public DeltaSet query(Predicate<? super View> predicate) {
+        return query(start, end, predicate);
+    }
+    
+    /**
+     * Returns the deltas in a part of the index whose AI deck matches the predicate. The window
+     * is split between worker threads, each with its own {@link View}.
+     * @param from the first delta to query, inclusive
+     * @param to the last delta to query, exclusive
+     * @param predicate a condition on the AI's deck
+     * @return the matching deltas, over the window {@code [from, to)}
+     */
+    public DeltaSet query(int from, int to, Predicate<? super View> predicate) {
+        if(from < start || to > end || from > to)
+            throw new IllegalArgumentException(String.format("[%d, %d) is not within the index window [%d, %d)", from, to, start, end));
+        DeltaSet result = new DeltaSet(from, to);
+        long size = (long) to - from;
+        int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            View view = new View();
+            long blockStart = from + (long) b * BLOCK_SIZE;
+            long blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+            for(long delta = blockStart; delta < blockEnd; delta++) {
+                view.moveTo((int) delta);
+                if(predicate.test(view))
+                    result.add((int) delta);
+            }
+        });
+        return result;
+    }
+    
+    private int checkDelta(int delta) {
+        if(delta < start || delta >= end)
+            throw new IllegalArgumentException(String.format("Delta %d is not within the index window [%d, %d)", delta, start, end));
+        return delta;
+    }
+    
+    /**
+     * A read-only view of the AI's deck at one delta, passed to query predicates. The view is
+     * reused for every delta a worker thread tests, so predicates must not keep it.
+     */
+    public final class View {
+        private int delta;
+        private int offset;
+        
+        private View() {
+        }
+        
+        private void moveTo(int delta) {
+            this.delta = delta;
+            offset = (delta - start) * RECORD_SIZE;
+        }
+        
+        /**
+         * Returns the delta of the deck in view.
+         * @return the delta
+         */
+        public int getDelta() {
+            return delta;
+        }
+        
+        /**
+         * Returns the card at a position in the shuffled deck; the AI draws from position 0.
+         * @param position a position in the deck
+         * @return the card at the position
+         */
+        public Card get(int position) {
+            if(position < 0 || position >= Deck.DECK_SIZE)
+                throw new IllegalArgumentException(String.format("Index %s is outside the deck", position));
+            return poolCards[records.get(offset + position) & 0xFF];
+        }
+        
+        /**
+         * Returns how many copies of a card are among the first cards of the deck.
+         * @param card a card
+         * @param positions how many cards from the top of the deck to look at
+         * @return the number of copies of the card in the first {@code positions} cards
+         */
+        public int countInFirst(Card card, int positions) {
+            int id = card.getId();
+            if(id >= poolIndexById.length || poolIndexById[id] < 0)
+                return 0;
+            byte index = (byte) poolIndexById[id];
+            int count = 0;
+            for(int i = 0, n = Math.min(positions, Deck.DECK_SIZE); i < n; i++) {
+                if(records.get(offset + i) == index)
+                    count++;
+            }
+            return count;
+        }
+        
+        /**
+         * Returns how many copies of a card the deck has.
+         * @param card a card
+         * @return the number of copies of the card
+         */
+        public int count(Card card) {
+            return countInFirst(card, Deck.DECK_SIZE);
+        }
+        
+        /**
+         * Returns whether the deck has a card.
+         * @param card a card
+         * @return true if the deck has at least one copy
+         */
+        public boolean contains(Card card) {
+            return countInFirst(card, Deck.DECK_SIZE) > 0;
+        }
+        
+        /**
+         * Returns whether a card is in the AI's first hand of {@value HandProbability#HAND_SIZE} cards.
+         * @param card a card
+         * @return true if the first hand has at least one copy
+         */
+        public boolean inFirstHand(Card card) {
+            return countInFirst(card, HandProbability.HAND_SIZE) > 0;
+        }
+    }
+    
+    /**
+     * The values of consecutive {@code rand()} calls, reduced the two ways deck generation uses
+     * them. The stream grows on demand, since a deck pool may reject many cards.
+     */
+    private static final class RandStream {
+        private int seed;
+        private int length = 0;
+        private short[] drops;
+        private byte[] swaps;
+        
+        private RandStream(int seed, int capacity) {
+            this.seed = seed;
+            drops = new short[capacity];
+            swaps = new byte[capacity];
+            ensure(capacity);
+        }
+        
+        private void ensure(int needed) {
+            if(needed <= length)
+                return;
+            if(needed > drops.length) {
+                int capacity = Math.max(needed, drops.length * 2);
+                drops = Arrays.copyOf(drops, capacity);
+                swaps = Arrays.copyOf(swaps, capacity);
+            }
+            for(int capacity = drops.length; length < capacity; length++) {
+                seed = RNG.next(seed);
+                int value = RNG.value(seed);
+                drops[length] = (short) (value % 2048);
+                swaps[length] = (byte) (value % 40);
+            }
+        }
+    }
+    
+    /**
+     * Generates one duelist's decks from a shared {@link RandStream}.
+     */
+    private static final class DeckWriter {
+        private final Duelist duelist;
+        private final Card[] poolCards;
+        private final int[] dropIndex = new int[2048];
+        private final FileChannel channel;
+        private final long recordsOffset;
+        
+        private DeckWriter(Duelist duelist, FileChannel channel, Builder builder) throws IOException {
+            this.duelist = duelist;
+            this.channel = channel;
+            Pool pool = duelist.getPool(Pool.Type.DECK);
+            poolCards = IntStream.range(0, 2048).mapToObj(pool::getDrop).filter(c -> c != null)
+                    .distinct().sorted((c1, c2) -> c1.getId() - c2.getId()).toArray(Card[]::new);
+            if(poolCards.length > 255)
+                throw new IllegalArgumentException(String.format("The deck pool of %s has %d cards, more than an index can hold", duelist, poolCards.length));
+            if(poolCards.length * 3 < Deck.DECK_SIZE)
+                throw new IllegalArgumentException(String.format("The deck pool of %s has only %d cards and cannot fill a deck", duelist, poolCards.length));
+            List<Card> poolList = Arrays.asList(poolCards);
+            for(int rand = 0; rand < 2048; rand++) {
+                Card card = pool.getDrop(rand);
+                dropIndex[rand] = card == null ? -1 : poolList.indexOf(card);
+            }
+            ByteBuffer header = ByteBuffer.allocate((HEADER_INTS + poolCards.length) * Integer.BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(duelist.getId())
+                    .putInt(builder.initialSeed.getSeed()).putInt(builder.initialSeed.getDelta())
+                    .putInt(builder.start).putInt(builder.end).putInt(poolCards.length);
+            for(Card card : poolCards) {
+                header.putInt(card.getId());
+            }
+            header.flip();
+            recordsOffset = header.capacity();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+        }
+        
+        /**
+         * Writes the records of {@code count} deltas, the first of which starts generating the
+         * AI deck at the beginning of the stream.
+         */
+        private void write(RandStream stream, int count, long firstRecord, byte[] buffer, byte[] copies) throws IOException {
+            for(int k = 0; k < count; k++) {
+                int record = k * RECORD_SIZE;
+                int j = k;
+                int filled = 0;
+                while(filled < Deck.DECK_SIZE) {
+                    stream.ensure(j + 1);
+                    int index = dropIndex[stream.drops[j++]];
+                    //jumping off the end of the pool skips the card
+                    if(index < 0)
+                        continue;
+                    //decks are limited to 3 copies of a card
+                    if(copies[index] < 3) {
+                        copies[index]++;
+                        buffer[record + filled++] = (byte) index;
+                    }
+                }
+                for(int i = 0; i < Deck.DECK_SIZE; i++) {
+                    copies[buffer[record + i] & 0xFF] = 0;
+                }
+                stream.ensure(j + SHUFFLE_CALLS);
+                for(int i = 0; i < SHUFFLE_CALLS / 2; i++) {
+                    int x = record + stream.swaps[j++];
+                    int y = record + stream.swaps[j++];
+                    byte holder = buffer[x];
+                    buffer[x] = buffer[y];
+                    buffer[y] = holder;
+                }
+            }
+            writeFully(channel, ByteBuffer.wrap(buffer, 0, count * RECORD_SIZE), recordsOffset + firstRecord * RECORD_SIZE);
+        }
+    }
+    
+    /**
+     * Builds the AI deck indices of several duelists over one window of deltas. The RNG values
+     * for each block of deltas are computed once and shared by all the duelists.
+     */
+    public static class Builder {
+        private final Path directory;
+        private List<Duelist> duelists = null;
+        private RNG initialSeed = new RNG();
+        private int start = 0;
+        private int end = SeedSearch.DEFAULT_SEARCH_SPACE;
+        private boolean built = false;
+        
+        /**
+         * Creates a builder that writes its indices into the given directory, one file per
+         * duelist named by {@link AiDeckIndex#getFileName(Duelist)}. Existing files are overwritten.
+         * @param directory the directory for the index files
+         */
+        public Builder(Path directory) {
+            this.directory = directory;
+        }
+        
+        /**
+         * Sets the duelists to index. The default is every duelist in the game.
+         * @param duelists the duelists to index
+         * @return this builder
+         */
+        public Builder withDuelists(Collection<Duelist> duelists) {
+            check();
+            if(duelists.isEmpty())
+                throw new IllegalArgumentException("At least one duelist is required");
+            this.duelists = new ArrayList<>(duelists);
+            return this;
+        }
+        
+        /**
+         * Sets the RNG state that deltas are counted from. The default is the RNG at boot.
+         * @param initialSeed the initial seed
+         * @return this builder
+         */
+        public Builder withInitialSeed(RNG initialSeed) {
+            check();
+            this.initialSeed = new RNG(initialSeed);
+            return this;
+        }
+        
+        /**
+         * Sets the window of deltas to index. The default is 0 to 5,000,000.
+         * @param start the first delta, inclusive
+         * @param end the last delta, exclusive
+         * @return this builder
+         */
+        public Builder withSpace(int start, int end) {
+            check();
+            if(start > end)
+                throw new IllegalArgumentException(String.format("Start value %d is greater than end value %d", start, end));
+            if((long) end - start > MAX_WINDOW)
+                throw new IllegalArgumentException(String.format("Window of %d deltas exceeds the maximum of %d", (long) end - start, MAX_WINDOW));
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+        
+        /**
+         * Builds and writes the indices.
+         * @return the index of each duelist
+         * @throws IOException if the indices can't be written
+         */
+        public Map<Duelist, AiDeckIndex> build() throws IOException {
+            check();
+            built = true;
+            if(duelists == null)
+                duelists = new ArrayList<>(FMDB.getInstance().getAllDuelists());
+            Files.createDirectories(directory);
+            List<FileChannel> channels = new ArrayList<>();
+            try {
+                List<DeckWriter> writers = new ArrayList<>();
+                for(Duelist duelist : duelists) {
+                    FileChannel channel = FileChannel.open(directory.resolve(getFileName(duelist)),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+                    channels.add(channel);
+                    writers.add(new DeckWriter(duelist, channel, this));
+                }
+                long size = (long) end - start;
+                int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                int origin = initialSeed.getSeed();
+                IntStream.range(0, blocks).parallel().forEach(b -> {
+                    long firstRecord = (long) b * BLOCK_SIZE;
+                    int count = (int) Math.min(BLOCK_SIZE, size - firstRecord);
+                    //the AI deck is generated after the player's deck is shuffled
+                    int seed = RNG.jump(origin, (start + firstRecord + SHUFFLE_CALLS) & 0xFFFFFFFFL);
+                    RandStream stream = new RandStream(seed, count + 2 * SHUFFLE_CALLS);
+                    byte[] buffer = new byte[count * RECORD_SIZE];
+                    byte[] copies = new byte[255];
+                    try {
+                        for(DeckWriter writer : writers) {
+                            writer.write(stream, count, firstRecord, buffer, copies);
+                        }
+                    }
+                    catch(IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+            catch(UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            finally {
+                for(FileChannel channel : channels) {
+                    channel.close();
+                }
+            }
+            Map<Duelist, AiDeckIndex> indices = new LinkedHashMap<>();
+            for(Duelist duelist : duelists) {
+                indices.put(duelist, open(directory.resolve(getFileName(duelist))));
+            }
+            return indices;
+        }
+        
+        private void check() {
+            if(built)
+                throw new IllegalStateException("Builder may not be reused after building an instance");
+        }
+    }
+}
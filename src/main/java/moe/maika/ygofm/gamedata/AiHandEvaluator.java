@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the strongest monster an AI duelist can make from its hand, and the fusion chain that
+ * makes it. AI hands hold up to {@value #MAX_HAND_SIZE} cards (see {@link Duelist#getHandSize()}),
+ * far too many to enumerate every ordered chain like {@link FusionChainSolver} does.
+ * <p>
+ * A failed fusion just replaces the current card with the next one, which is no better than
+ * starting the chain from that card, so only chains of successful fusions are searched. For
+ * every card reached, the cards of the hand it fuses with are kept as a bitmask, and states
+ * of (current card, cards left in hand) are visited once. Each card also has an upper bound on
+ * the ATK of anything it can be fused into, computed once over the whole fusion graph, and
+ * branches that can't beat the best monster found so far are cut.
+ * <p>
+ * Each evaluator holds scratch tables, so each thread needs its own.
+ * @author sg4e
+ */
+public final class AiHandEvaluator {
+    
+    /**
+     * The largest hand of any duelist.
+     */
+    public static final int MAX_HAND_SIZE = 20;
+    
+    private final FMDB db;
+    // card id -> ATK, and the highest ATK of the card or anything fusions can turn it into
+    private final int[] attack;
+    private final int[] attackBound;
+    // card id -> the hand cards it fuses with, valid while partnerStamps[id] == generation
+    private final int[] partners;
+    private final int[] partnerStamps;
+    // visited (card id << MAX_HAND_SIZE | cards left) states, in an open-addressing set
+    private long[] visitedKeys = new long[1 << 10];
+    private int[] visitedStamps = new int[1 << 10];
+    private int visitedCount;
+    private int generation;
+    
+    private final int[] hand = new int[MAX_HAND_SIZE];
+    private int handSize;
+    private final int[] path = new int[MAX_HAND_SIZE];
+    private final int[] bestPath = new int[MAX_HAND_SIZE];
+    private int bestLength;
+    private int best;
+    private int bestCard;
+    
+    /**
+     * Creates an evaluator for the game's fusions.
+     */
+    public AiHandEvaluator() {
+        db = FMDB.getInstance();
+        int bound = db.getAllCards().stream().mapToInt(Card::getId).max().orElse(0) + 1;
+        attack = new int[bound];
+        for(Card card : db.getAllCards()) {
+            attack[card.getId()] = card.getAttack();
+        }
+        attackBound = attackBounds(db.getFusionTriples(), attack);
+        partners = new int[bound];
+        partnerStamps = new int[bound];
+    }
+    
+    /**
+     * Returns the highest ATK each card could reach through any chain of fusions, ignoring which
+     * materials are at hand. Fusion results can fuse again, so the bounds are raised along the
+     * fusion edges until they stop changing.
+     */
+    private static int[] attackBounds(int[] fusions, int[] attack) {
+        int[] bounds = attack.clone();
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(int i = 0; i < fusions.length; i += 3) {
+                int result = bounds[fusions[i + 2]];
+                if(result > bounds[fusions[i]]) {
+                    bounds[fusions[i]] = result;
+                    changed = true;
+                }
+                if(result > bounds[fusions[i + 1]]) {
+                    bounds[fusions[i + 1]] = result;
+                    changed = true;
+                }
+            }
+        }
+        return bounds;
+    }
+    
+    /**
+     * Finds the strongest monster the hand can make.
+     * @param hand the AI's hand
+     * @return the strongest monster and the chain that makes it
+     * @throws IllegalArgumentException if the hand is empty or has more than 20 cards
+     */
+    public Result evaluate(List<Card> hand) {
+        if(hand == null || hand.isEmpty() || hand.size() > MAX_HAND_SIZE)
+            throw new IllegalArgumentException("Hand must have 1 to " + MAX_HAND_SIZE + " cards");
+        for(int i = 0; i < hand.size(); i++) {
+            this.hand[i] = hand.get(i).getId();
+        }
+        evaluateIds(hand.size());
+        List<Card> chain = new ArrayList<>(bestLength);
+        for(int i = 0; i < bestLength; i++) {
+            chain.add(hand.get(bestPath[i]));
+        }
+        return new Result(db.getCard(bestCard), best, Collections.unmodifiableList(chain));
+    }
+    
+    /**
+     * Evaluates the first {@code count} ids of {@link #hand}, leaving the result in
+     * {@link #best}, {@link #bestCard} and {@link #bestPath}.
+     */
+    private void evaluateIds(int count) {
+        handSize = count;
+        if(++generation == 0) {
+            Arrays.fill(partnerStamps, 0);
+            Arrays.fill(visitedStamps, 0);
+            generation = 1;
+        }
+        visitedCount = 0;
+        best = Integer.MIN_VALUE;
+        bestLength = 0;
+        int all = (1 << count) - 1;
+        for(int i = 0; i < count; i++) {
+            int card = hand[i];
+            if(attackBound[card] <= best)
+                continue;
+            path[0] = i;
+            search(card, all & ~(1 << i), 1);
+        }
+    }
+    
+    private void search(int card, int left, int depth) {
+        if(attack[card] > best) {
+            best = attack[card];
+            bestCard = card;
+            bestLength = depth;
+            System.arraycopy(path, 0, bestPath, 0, depth);
+        }
+        if(attackBound[card] <= best || !visit((long) card << MAX_HAND_SIZE | left))
+            return;
+        for(int rest = partners(card) & left; rest != 0; rest &= rest - 1) {
+            int i = Integer.numberOfTrailingZeros(rest);
+            path[depth] = i;
+            search(db.fuseIds(card, hand[i]), left & ~(1 << i), depth + 1);
+            if(attackBound[card] <= best)
+                return;
+        }
+    }
+    
+    /**
+     * Returns the bitmask of the hand cards that fuse with the given card.
+     */
+    private int partners(int card) {
+        if(partnerStamps[card] == generation)
+            return partners[card];
+        int mask = 0;
+        for(int i = 0; i < handSize; i++) {
+            if(db.fuseIds(card, hand[i]) != 0)
+                mask |= 1 << i;
+        }
+        partnerStamps[card] = generation;
+        partners[card] = mask;
+        return mask;
+    }
+    
+    /**
+     * Marks a state as visited, returning false if it already was.
+     */
+    private boolean visit(long key) {
+        if(2 * (visitedCount + 1) > visitedKeys.length)
+            growVisited();
+        int slots = visitedKeys.length - 1;
+        for(int slot = hash(key) & slots; ; slot = (slot + 1) & slots) {
+            if(visitedStamps[slot] != generation) {
+                visitedStamps[slot] = generation;
+                visitedKeys[slot] = key;
+                visitedCount++;
+                return true;
+            }
+            if(visitedKeys[slot] == key)
+                return false;
+        }
+    }
+    
+    private void growVisited() {
+        long[] oldKeys = visitedKeys;
+        int[] oldStamps = visitedStamps;
+        visitedKeys = new long[oldKeys.length * 2];
+        visitedStamps = new int[oldKeys.length * 2];
+        int slots = visitedKeys.length - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldStamps[i] != generation)
+                continue;
+            int slot = hash(oldKeys[i]) & slots;
+            while(visitedStamps[slot] == generation) {
+                slot = (slot + 1) & slots;
+            }
+            visitedStamps[slot] = generation;
+            visitedKeys[slot] = oldKeys[i];
+        }
+    }
+    
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32);
+    }
+    
+    /**
+     * The strongest monster of a hand and the chain that makes it. Instances are immutable.
+     */
+    public static class Result {
+        private final Card card;
+        private final int attack;
+        private final List<Card> chain;
+
+        private Result(Card card, int attack, List<Card> chain) {
+            this.card = card;
+            this.attack = attack;
+            this.chain = chain;
+        }
+        
+        /**
+         * Returns the strongest monster the hand can make.
+         * @return the resulting card
+         */
+        public Card getCard() {
+            return card;
+        }
+        
+        /**
+         * Returns the ATK of the resulting card.
+         * @return the ATK
+         */
+        public int getAttack() {
+            return attack;
+        }
+        
+        /**
+         * Returns the cards of the hand in the order they are played, every fusion in the
+         * chain succeeding; a single card if no fusion beats the strongest card in hand.
+         * @return the chain
+         */
+        public List<Card> getChain() {
+            return chain;
+        }
+
+        @Override
+        public String toString() {
+            return chain + " -> " + card + " (" + attack + ")";
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of cards stored as a bitset with one bit per card id, such as the distinct cards of a
+ * deck or a trunk. Besides the usual set operations, it answers fusion questions against the
+ * per-card partner bitsets of {@link FMDB} with a few ANDs and popcounts: whether a card fuses
+ * with anything in the set, how many cards of the set it fuses with, and how many pairs of
+ * distinct cards of the set fuse. {@link #countFusionPairs(Deck)} also counts the copies of a deck.
+ * <p>
+ * Instances are immutable.
+ * @author sg4e
+ */
+public final class CardSet {
+    
+    private final FusionIndex index;
+    private final long[] words;
+    
+    private CardSet(FusionIndex index, long[] words) {
+        this.index = index;
+        this.words = words;
+    }
+    
+    private static CardSet empty() {
+        FusionIndex index = FMDB.getInstance().getFusionIndex();
+        return new CardSet(index, new long[index.words]);
+    }
+    
+    /**
+     * Creates a set of the given cards. Duplicates are ignored.
+     * @param cards the cards
+     * @return the set of the cards
+     */
+    public static CardSet of(Collection<Card> cards) {
+        CardSet set = empty();
+        for(Card card : cards) {
+            if(card == null)
+                throw new IllegalArgumentException("Cards cannot be null");
+            set.words[card.getId() >>> 6] |= 1L << card.getId();
+        }
+        return set;
+    }
+    
+    /**
+     * Creates a set of the given cards. Duplicates are ignored.
+     * @param cards the cards
+     * @return the set of the cards
+     */
+    public static CardSet of(Card... cards) {
+        return of(Arrays.asList(cards));
+    }
+    
+    /**
+     * Creates a set of the distinct cards of a deck.
+     * @param deck a deck
+     * @return the set of the cards in the deck
+     */
+    public static CardSet of(Deck deck) {
+        return of(deck.toList());
+    }
+    
+    /**
+     * Creates the set of every card that fuses with the given card, which includes the card
+     * itself if two copies of it fuse.
+     * @param card a card
+     * @return the fusion partners of the card
+     */
+    public static CardSet partnersOf(Card card) {
+        CardSet set = empty();
+        System.arraycopy(set.index.partnerBits, set.offset(card), set.words, 0, set.words.length);
+        return set;
+    }
+    
+    private int offset(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        return card.getId() * index.words;
+    }
+    
+    /**
+     * Checks if the set contains a card.
+     * @param card a card
+     * @return true if the card is in the set
+     */
+    public boolean contains(Card card) {
+        return (words[card.getId() >>> 6] & 1L << card.getId()) != 0;
+    }
+    
+    /**
+     * Returns the number of cards in the set.
+     * @return the number of cards
+     */
+    public int size() {
+        int size = 0;
+        for(long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+    
+    /**
+     * Checks if the set is empty.
+     * @return true if the set has no cards
+     */
+    public boolean isEmpty() {
+        for(long word : words) {
+            if(word != 0)
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the cards in the set.
+     * @return the cards, ordered by id
+     */
+    public List<Card> getCards() {
+        FMDB db = FMDB.getInstance();
+        List<Card> cards = new ArrayList<>(size());
+        for(int w = 0; w < words.length; w++) {
+            for(long word = words[w]; word != 0; word &= word - 1) {
+                cards.add(db.getCard(w << 6 | Long.numberOfTrailingZeros(word)));
+            }
+        }
+        return Collections.unmodifiableList(cards);
+    }
+    
+    /**
+     * Checks if a card fuses with any card of the set. This takes constant time.
+     * @param card a card
+     * @return true if some card of the set is a fusion partner of the card
+     */
+    public boolean fusesWithAny(Card card) {
+        long[] partners = index.partnerBits;
+        int offset = offset(card);
+        for(int w = 0; w < words.length; w++) {
+            if((partners[offset + w] & words[w]) != 0)
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Counts the cards of the set that fuse with a card. This takes constant time.
+     * @param card a card
+     * @return the number of fusion partners of the card in the set
+     */
+    public int countPartnersOf(Card card) {
+        long[] partners = index.partnerBits;
+        int offset = offset(card);
+        int count = 0;
+        for(int w = 0; w < words.length; w++) {
+            count += Long.bitCount(partners[offset + w] & words[w]);
+        }
+        return count;
+    }
+    
+    /**
+     * Counts the pairs of distinct cards in the set that fuse. A card that fuses with itself
+     * isn't counted, since the set holds one copy of it. To count the pairs of a deck with
+     * several copies of a card, use {@link #countFusionPairs(Deck)}.
+     * @return the number of unordered pairs of distinct cards that fuse
+     */
+    public int countDistinctFusionPairs() {
+        long[] partners = index.partnerBits;
+        int ordered = 0;
+        for(int w = 0; w < words.length; w++) {
+            for(long word = words[w]; word != 0; word &= word - 1) {
+                int id = w << 6 | Long.numberOfTrailingZeros(word);
+                int offset = id * index.words;
+                for(int v = 0; v < words.length; v++) {
+                    ordered += Long.bitCount(partners[offset + v] & words[v]);
+                }
+                //don't count the card fusing with itself
+                if((partners[offset + w] & 1L << id) != 0)
+                    ordered--;
+            }
+        }
+        return ordered / 2;
+    }
+    
+    /**
+     * Counts the pairs of cards in a deck that fuse, counting every copy: two cards that fuse
+     * with {@code m} and {@code n} copies in the deck make {@code m * n} pairs, and a card that
+     * fuses with itself makes {@code m * (m - 1) / 2} pairs with its own copies.
+     * @param deck a deck
+     * @return the number of unordered pairs of the deck's cards that fuse
+     */
+    public static int countFusionPairs(Deck deck) {
+        if(deck == null)
+            throw new IllegalArgumentException("Deck cannot be null");
+        CardSet set = empty();
+        int[] copies = new int[set.words.length << 6];
+        for(Card card : deck.toList()) {
+            set.words[card.getId() >>> 6] |= 1L << card.getId();
+            copies[card.getId()]++;
+        }
+        long[] partners = set.index.partnerBits;
+        int pairs = 0;
+        for(int w = 0; w < set.words.length; w++) {
+            for(long word = set.words[w]; word != 0; word &= word - 1) {
+                int id = w << 6 | Long.numberOfTrailingZeros(word);
+                int offset = id * set.index.words;
+                //partners with a greater id, so every pair of distinct cards is counted once
+                for(int v = w; v < set.words.length; v++) {
+                    long mask = v == w ? -2L << (id & 63) : -1L;
+                    for(long match = partners[offset + v] & set.words[v] & mask; match != 0; match &= match - 1) {
+                        pairs += copies[id] * copies[v << 6 | Long.numberOfTrailingZeros(match)];
+                    }
+                }
+                if((partners[offset + w] & 1L << id) != 0)
+                    pairs += copies[id] * (copies[id] - 1) / 2;
+            }
+        }
+        return pairs;
+    }
+    
+    /**
+     * Returns the cards in both sets.
+     * @param other another set
+     * @return the intersection of the sets
+     */
+    public CardSet and(CardSet other) {
+        long[] result = new long[words.length];
+        for(int w = 0; w < words.length; w++) {
+            result[w] = words[w] & other.words[w];
+        }
+        return new CardSet(index, result);
+    }
+    
+    /**
+     * Returns the cards in either set.
+     * @param other another set
+     * @return the union of the sets
+     */
+    public CardSet or(CardSet other) {
+        long[] result = new long[words.length];
+        for(int w = 0; w < words.length; w++) {
+            result[w] = words[w] | other.words[w];
+        }
+        return new CardSet(index, result);
+    }
+    
+    /**
+     * Returns the cards in this set that are not in the other set.
+     * @param other another set
+     * @return the difference of the sets
+     */
+    public CardSet andNot(CardSet other) {
+        long[] result = new long[words.length];
+        for(int w = 0; w < words.length; w++) {
+            result[w] = words[w] & ~other.words[w];
+        }
+        return new CardSet(index, result);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(!(obj instanceof CardSet))
+            return false;
+        return Arrays.equals(words, ((CardSet) obj).words);
+    }
+
+    @Override
+    public String toString() {
+        return getCards().toString();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A deck stored as 40 card ids in a {@code short[]}, for keeping large numbers of decks in
+ * memory. Copying, comparing and hashing a compact deck touches one small primitive array rather
+ * than 40 {@link Card} references. Use {@link #CompactDeck(Deck)} and {@link #toDeck()} to
+ * convert from and to {@link Deck}.
+ * <p>
+ * Unlike {@link Deck}, this class is NOT thread-safe: shuffling and sorting modify it in place
+ * without synchronization. Compact decks that are no longer modified can be shared freely.
+ * @author sg4e
+ */
+public final class CompactDeck {
+    
+    private final short[] ids;
+    
+    /**
+     * Creates a compact copy of a deck.
+     * @param deck the deck to copy
+     */
+    public CompactDeck(Deck deck) {
+        ids = new short[Deck.DECK_SIZE];
+        for(int i = 0; i < Deck.DECK_SIZE; i++) {
+            ids[i] = (short) deck.get(i).getId();
+        }
+    }
+    
+    /**
+     * Creates a copy of another compact deck.
+     * @param toCopy the deck to copy
+     */
+    public CompactDeck(CompactDeck toCopy) {
+        ids = toCopy.ids.clone();
+    }
+    
+    private CompactDeck(short[] ids) {
+        this.ids = ids;
+    }
+    
+    /**
+     * Creates a compact deck from 40 card ids.
+     * @param ids the card ids, in deck order
+     * @return a new compact deck
+     */
+    public static CompactDeck fromIds(int... ids) {
+        if(ids.length != Deck.DECK_SIZE)
+            throw new IllegalArgumentException(String.format("Deck must contain %s cards; given %s instead", Deck.DECK_SIZE, ids.length));
+        short[] packed = new short[Deck.DECK_SIZE];
+        for(int i = 0; i < Deck.DECK_SIZE; i++) {
+            if(ids[i] < 0 || ids[i] > Short.MAX_VALUE)
+                throw new IllegalArgumentException("Invalid card id: " + ids[i]);
+            packed[i] = (short) ids[i];
+        }
+        return new CompactDeck(packed);
+    }
+    
+    /**
+     * Converts this compact deck to a {@link Deck}, looking the cards up in {@link FMDB}.
+     * @return a new deck with the same cards in the same order
+     */
+    public Deck toDeck() {
+        FMDB db = FMDB.getInstance();
+        List<Card> cards = new ArrayList<>(Deck.DECK_SIZE);
+        for(short id : ids) {
+            cards.add(db.getCard(id));
+        }
+        return new Deck(cards);
+    }
+    
+    /**
+     * Gets the id of the card at the given index.
+     * @param index the index of the card in the deck
+     * @return the id of the card at the given index
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+    
+    /**
+     * Returns the card ids of this deck in order.
+     * @return a new array of the 40 card ids
+     */
+    public int[] toIds() {
+        int[] result = new int[Deck.DECK_SIZE];
+        for(int i = 0; i < Deck.DECK_SIZE; i++) {
+            result[i] = ids[i];
+        }
+        return result;
+    }
+    
+    /**
+     * Sorts the deck according to the given deck sort. The deck is modified in place.
+     * @param comparator the deck sort
+     */
+    public void sort(Comparator<? super Card> comparator) {
+        SortRanks.sort(ids, comparator);
+    }
+    
+    /**
+     * Shuffles the deck exactly like {@link Deck#shuffle(RNG, Comparator)}: sorts it and then shuffles it.
+     * @param seed the RNG seed
+     * @param deckOrderBeforeDuel the sort order of the deck on the Build Deck screen before the duel
+     */
+    public void shuffle(RNG seed, Comparator<? super Card> deckOrderBeforeDuel) {
+        sort(deckOrderBeforeDuel);
+        shuffle(seed);
+    }
+    
+    /**
+     * Shuffles the deck exactly like {@link Deck#shuffle(RNG)}, with its current order as the
+     * starting point. The RNG is advanced by the 320 {@code rand()} calls of the shuffle.
+     * @param seed the RNG seed
+     */
+    public void shuffle(RNG seed) {
+        synchronized(seed) {
+            shuffle(seed.getSeed());
+            seed.advance(320);
+        }
+    }
+    
+    /**
+     * Shuffles the deck from a raw seed value and returns the seed after the shuffle.
+     */
+    int shuffle(int seed) {
+        for(int i = 0; i < 160; i++) {
+            seed = RNG.next(seed);
+            int x = RNG.value(seed) % 40;
+            seed = RNG.next(seed);
+            int y = RNG.value(seed) % 40;
+            short holder = ids[x];
+            ids[x] = ids[y];
+            ids[y] = holder;
+        }
+        return seed;
+    }
+    
+    /**
+     * Returns a 64-bit hash of the card ids in order. The hash only depends on the contents
+     * of the deck, so it is the same across JVM runs and can serve as a cache key.
+     * @return a 64-bit hash of this deck
+     */
+    public long longHashCode() {
+        //FNV-1a over the ids, with a final avalanche so that similar decks spread out
+        long hash = 0xcbf29ce484222325L;
+        for(short id : ids) {
+            hash = (hash ^ id) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Arrays.equals(ids, ((CompactDeck) obj).ids);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(ids);
+    }
+}
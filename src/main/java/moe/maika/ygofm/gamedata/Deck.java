@@ -28,7 +28,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -41,6 +40,10 @@ import java.util.stream.Collectors;
 public class Deck {
 
     private final Card[] cards;
+    /**
+     * Zobrist hashes of the deck, kept up to date by every modification.
+     */
+    private long orderedHash, multisetHash;
 
     /**
      * The size of a deck in Forbidden Memories.
@@ -81,6 +84,9 @@ public class Deck {
     public static final Comparator<Card> JAPANESE_DEFENSE_ORDER = new ComparatorStringDecorator<>((c1, c2) -> c1.getJpDefSort() - c2.getJpDefSort(), "Japanese Defense Sort");
     public static final Comparator<Card> JAPANESE_TYPE_ORDER = new ComparatorStringDecorator<>((c1, c2) -> c1.getJpTypeSort() - c2.getJpTypeSort(), "Japanese Type Sort");
     private static final List<Comparator<Card>> SORTS = new ArrayList<>(11);
+    // duelist id -> this thread's deck generator for the duelist
+    private static final ThreadLocal<DuelistDeckGenerator[]> GENERATORS =
+            ThreadLocal.withInitial(() -> new DuelistDeckGenerator[Duelist.Name.values().length + 1]);
     static {
         SORTS.add(CARD_ID_ORDER);
         SORTS.add(ALPHABETICAL_ORDER);
@@ -112,6 +118,7 @@ public class Deck {
         if(composition.size() != DECK_SIZE)
             throw new IllegalArgumentException(String.format("Deck must contain %s cards; given %s instead", DECK_SIZE, composition.size()));
         composition.toArray(cards);
+        rehash();
     }
     
     /**
@@ -120,6 +127,8 @@ public class Deck {
      */
     public Deck(Deck toCopy) {
         cards = Arrays.copyOf(toCopy.cards, DECK_SIZE);
+        orderedHash = toCopy.orderedHash;
+        multisetHash = toCopy.multisetHash;
     }
     
     /**
@@ -133,6 +142,38 @@ public class Deck {
         return cards[index];
     }
     
+    /**
+     * Replaces the card at the given index.
+     * @param index the index of the card in the deck
+     * @param card the new card
+     */
+    public void set(int index, Card card) {
+        if(index < 0 || index >= DECK_SIZE)
+            throw new IllegalArgumentException(String.format("Index %s is outside the deck", index));
+        orderedHash ^= positionKey(index, cards[index]) ^ positionKey(index, card);
+        multisetHash += cardKey(card) - cardKey(cards[index]);
+        cards[index] = card;
+    }
+    
+    /**
+     * Swaps the cards at the given indices.
+     * @param first the index of a card in the deck
+     * @param second the index of another card in the deck
+     */
+    public void swap(int first, int second) {
+        if(first < 0 || first >= DECK_SIZE || second < 0 || second >= DECK_SIZE)
+            throw new IllegalArgumentException(String.format("Index %s or %s is outside the deck", first, second));
+        swapImpl(first, second);
+    }
+    
+    private void swapImpl(int x, int y) {
+        Card holder = cards[x];
+        //the multiset doesn't change, and the ordered hash only changes at the two positions
+        orderedHash ^= positionKey(x, holder) ^ positionKey(y, cards[y]) ^ positionKey(x, cards[y]) ^ positionKey(y, holder);
+        cards[x] = cards[y];
+        cards[y] = holder;
+    }
+    
     /**
      * Gets the range of cards in the deck from the given start index to the given end index.
      * @param start the start index, inclusive
@@ -158,11 +199,60 @@ public class Deck {
         return new ArrayList<>(Arrays.asList(cards));
     }
 
+    /**
+     * Returns a 64-bit hash of the cards in order. The hash is maintained incrementally as the
+     * deck changes, so this method is constant time. It only depends on the card ids, so it is
+     * the same across JVM runs and can serve as a persistent cache key.
+     * @return a hash of the deck that depends on the order of its cards
+     */
+    public long getOrderedHash() {
+        return orderedHash;
+    }
+    
+    /**
+     * Returns a 64-bit hash of the cards regardless of their order: decks with the same cards
+     * in any order have the same multiset hash. Like {@link #getOrderedHash()}, it is maintained
+     * incrementally and stable across JVM runs.
+     * @return a hash of the deck that depends only on which cards it has
+     */
+    public long getMultisetHash() {
+        return multisetHash;
+    }
+    
+    private void rehash() {
+        orderedHash = 0;
+        multisetHash = 0;
+        for(int i = 0; i < DECK_SIZE; i++) {
+            orderedHash ^= positionKey(i, cards[i]);
+            multisetHash += cardKey(cards[i]);
+        }
+    }
+    
+    /**
+     * The Zobrist key for a card at a position. Keys are derived with SplitMix64 instead of
+     * drawn from a random generator, so they never change between runs.
+     */
+    private static long positionKey(int position, Card card) {
+        return card == null ? 0 : mix(((long) position << 32 | card.getId()) + 0x5DEECE66DL);
+    }
+    
+    /**
+     * The key for a card in the multiset hash, which sums the keys so that copies count.
+     */
+    private static long cardKey(Card card) {
+        return card == null ? 0 : mix(card.getId());
+    }
+    
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 89 * hash + Arrays.deepHashCode(this.cards);
-        return hash;
+        return (int) (orderedHash ^ (orderedHash >>> 32));
     }
 
     @Override
@@ -185,10 +275,13 @@ public class Deck {
     
     /**
      * Sorts the deck according to the given deck sort. The deck in modified in place.
+     * The game's deck sorts use precomputed ranks and a radix sort; other comparators
+     * use a stable comparison sort, which orders ties the same way.
      * @param comparator the deck sort
      */
     public void sort(Comparator<? super Card> comparator) {
-        Arrays.sort(cards, comparator);
+        SortRanks.sort(cards, comparator);
+        rehash();
     }
 
     /**
@@ -204,7 +297,7 @@ public class Deck {
         If this is the player's deck, first sort it according to the sort 
         selected for the deck before entering the duel.
          */
-        Arrays.sort(cards, deckOrderBeforeDuel);
+        sort(deckOrderBeforeDuel);
         shuffle(seed);
     }
 
@@ -219,9 +312,7 @@ public class Deck {
         for(int i = 0; i < 160; i++) {
             int x = seed.rand() % 40;
             int y = seed.rand() % 40;
-            Card holder = cards[x];
-            cards[x] = cards[y];
-            cards[y] = holder;
+            swapImpl(x, y);
         }
     }
     
@@ -247,16 +338,25 @@ public class Deck {
      * @return an unshuffled AI deck
      */
     public static Deck createDuelistDeck(Duelist duelist, RNG seed) {
+        DuelistDeckGenerator[] generators = GENERATORS.get();
+        DuelistDeckGenerator generator = generators[duelist.getId()];
+        if(generator == null || generator.getDuelist() != duelist)
+            generators[duelist.getId()] = generator = new DuelistDeckGenerator(duelist);
+        return createDuelistDeck(generator, seed);
+    }
+    
+    /**
+     * Creates an AI duelist's deck with a generator the caller keeps, so that generating decks
+     * for many seeds only allocates the returned decks.
+     * @param generator the generator of the duelist whose deck to create
+     * @param seed the RNG seed
+     * @return an unshuffled AI deck
+     */
+    public static Deck createDuelistDeck(DuelistDeckGenerator generator, RNG seed) {
+        generator.generate(seed);
         Deck deck = new Deck();
-        Pool pool = duelist.getPool(Pool.Type.DECK);
-        int i = 0;
-        while(i < DECK_SIZE) {
-            Card dropped = pool.getDrop(seed);
-            //decks are limited to 3 copies of a card
-            if(Arrays.stream(deck.cards).filter(Objects::nonNull).filter(c -> c.equals(dropped)).count() < 3L) {
-                deck.cards[i++] = dropped;
-            }
-        }
+        System.arraycopy(generator.getBuffer(), 0, deck.cards, 0, DECK_SIZE);
+        deck.rehash();
         return deck;
     }
     
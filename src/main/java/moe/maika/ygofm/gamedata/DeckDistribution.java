@@ -0,0 +1,323 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The exact probability distribution of an AI duelist's deck, as generated by
+ * {@link Deck#createDuelistDeck(Duelist, RNG)} from a uniformly random seed. For every card in
+ * the duelist's {@link Pool.Type#DECK} pool, this gives the probability that the deck contains
+ * 0, 1, 2 or 3 copies of it.
+ * <p>
+ * The game draws from the pool until it has accepted 40 cards, rejecting cards it already has 3
+ * copies of. The distribution is computed analytically rather than by sampling: drawing at
+ * the times of a Poisson process makes the numbers of draws of each card independent, so the
+ * state of the deck at any time is a product of small per-card distributions. The deck
+ * is finished at the moment its 40th card is accepted, which is integrated over time
+ * numerically. The results are accurate to about 10<sup>-9</sup>.
+ * <p>
+ * Distributions are cached per duelist, so {@link #of(Duelist)} only computes each one once.
+ * Instances are immutable and thread-safe.
+ * @author sg4e
+ */
+public final class DeckDistribution {
+    
+    private static final int MAX_COPIES = 3;
+    private static final int POOL_TOTAL = 2048;
+    /**
+     * The degree of the generating polynomials: only states short of a full deck matter.
+     */
+    private static final int DEGREE = Deck.DECK_SIZE;
+    /**
+     * Nodes and weights of 8-point Gauss-Legendre quadrature on [-1, 1].
+     */
+    private static final double[] GAUSS_NODES = {
+        -0.9602898564975363, -0.7966664774136267, -0.5255324099163290, -0.1834346424956498,
+        0.1834346424956498, 0.5255324099163290, 0.7966664774136267, 0.9602898564975363
+    };
+    private static final double[] GAUSS_WEIGHTS = {
+        0.1012285362903763, 0.2223810344533745, 0.3137066458778873, 0.3626837833783620,
+        0.3626837833783620, 0.3137066458778873, 0.2223810344533745, 0.1012285362903763
+    };
+    private static final Map<Integer, DeckDistribution> CACHE = new ConcurrentHashMap<>();
+    
+    private final Duelist duelist;
+    private final Map<Card, double[]> copies;
+    
+    private DeckDistribution(Duelist duelist) {
+        this.duelist = duelist;
+        Pool pool = duelist.getPool(Pool.Type.DECK);
+        //weigh the cards exactly as Pool.getDrop hands them out; drops past the end of the pool are rejected
+        Map<Card, Integer> weights = new LinkedHashMap<>();
+        for(int rand = 0; rand < POOL_TOTAL; rand++) {
+            Card card = pool.getDrop(rand);
+            if(card != null)
+                weights.merge(card, 1, Integer::sum);
+        }
+        List<Card> cards = new ArrayList<>(weights.keySet());
+        cards.sort(Comparator.comparingInt(Card::getId));
+        if(cards.size() * MAX_COPIES < Deck.DECK_SIZE)
+            throw new IllegalArgumentException(String.format("The deck pool of %s has only %d cards and cannot fill a deck", duelist, cards.size()));
+        double[] rates = cards.stream().mapToDouble(c -> weights.get(c) / (double) POOL_TOTAL).toArray();
+        double[][] distributions = integrate(rates);
+        Map<Card, double[]> result = new LinkedHashMap<>();
+        for(int i = 0; i < cards.size(); i++) {
+            result.put(cards.get(i), distributions[i]);
+        }
+        copies = Collections.unmodifiableMap(result);
+    }
+    
+    /**
+     * Returns the deck distribution of the given duelist, computing it on first use.
+     * @param duelist an AI duelist
+     * @return the distribution of the duelist's deck
+     */
+    public static DeckDistribution of(Duelist duelist) {
+        DeckDistribution distribution = CACHE.get(duelist.getId());
+        if(distribution == null) {
+            //computed outside the map so that other duelists can be computed at the same time
+            distribution = new DeckDistribution(duelist);
+            DeckDistribution previous = CACHE.putIfAbsent(duelist.getId(), distribution);
+            if(previous != null)
+                distribution = previous;
+        }
+        return distribution;
+    }
+    
+    /**
+     * Returns the deck distributions of all the given duelists, computing the ones that are
+     * not cached yet in parallel.
+     * @param duelists AI duelists, such as {@link FMDB#getAllDuelists()}
+     * @return the distribution of each duelist's deck, in the iteration order of {@code duelists}
+     */
+    public static Map<Duelist, DeckDistribution> ofAll(Collection<Duelist> duelists) {
+        duelists.parallelStream().forEach(DeckDistribution::of);
+        return duelists.stream().collect(Collectors.toMap(Function.identity(), DeckDistribution::of, (a, b) -> a, LinkedHashMap::new));
+    }
+    
+    /**
+     * Returns the duelist whose deck this is the distribution of.
+     * @return the duelist
+     */
+    public Duelist getDuelist() {
+        return duelist;
+    }
+    
+    /**
+     * Returns the probability that the deck contains exactly the given number of copies of a card.
+     * @param card a card
+     * @param count the number of copies, from 0 to 3
+     * @return the probability of exactly {@code count} copies of {@code card}
+     */
+    public double getProbability(Card card, int count) {
+        if(count < 0 || count > MAX_COPIES)
+            throw new IllegalArgumentException("Number of copies must be between 0 and 3: " + count);
+        double[] distribution = copies.get(card);
+        if(distribution == null)
+            return count == 0 ? 1 : 0;
+        return distribution[count];
+    }
+    
+    /**
+     * Returns the probability that the deck contains at least one copy of a card.
+     * @param card a card
+     * @return the probability that {@code card} is in the deck
+     */
+    public double getProbabilityOfAny(Card card) {
+        return 1 - getProbability(card, 0);
+    }
+    
+    /**
+     * Returns the distribution of the number of copies of a card in the deck.
+     * @param card a card
+     * @return an array of length 4 whose element {@code k} is the probability of {@code k} copies
+     */
+    public double[] getCopyDistribution(Card card) {
+        double[] distribution = copies.get(card);
+        return distribution == null ? new double[] { 1, 0, 0, 0 } : distribution.clone();
+    }
+    
+    /**
+     * Returns the expected number of copies of a card in the deck.
+     * @param card a card
+     * @return the expected number of copies of {@code card}
+     */
+    public double getExpectedCopies(Card card) {
+        double[] distribution = copies.get(card);
+        if(distribution == null)
+            return 0;
+        double expected = 0;
+        for(int k = 1; k <= MAX_COPIES; k++) {
+            expected += k * distribution[k];
+        }
+        return expected;
+    }
+    
+    /**
+     * Returns the expected deck: the expected number of copies of every card that can be in
+     * it. The expected numbers of copies add up to 40.
+     * @return the expected number of copies of each card in the deck pool, in card id order
+     */
+    public Map<Card, Double> getExpectedDeck() {
+        Map<Card, Double> deck = new LinkedHashMap<>();
+        copies.keySet().forEach(card -> deck.put(card, getExpectedCopies(card)));
+        return deck;
+    }
+    
+    /**
+     * Integrates the completion density of the deck over time. Each card is drawn at the times
+     * of an independent Poisson process with the given rate, and the numbers of accepted copies
+     * are the draws capped at 3. The deck completes when a card is accepted while exactly 39
+     * are in the deck, so the probability of finishing with {@code k} copies of card Y is the
+     * integral over time of
+     * <ul>
+     * <li>Y being accepted last: P(Y has k-1) &middot; rate(Y) &middot; P(the others have 40-k), plus</li>
+     * <li>another card being accepted last: P(Y has k) &middot; P(the others have 39-k and the last card is accepted).</li>
+     * </ul>
+     * The per-card distributions are combined with generating polynomials; prefix and suffix
+     * products give the "all cards but Y" products for every Y in linear time.
+     */
+    private static double[][] integrate(double[] rates) {
+        int n = rates.length;
+        double[][] result = new double[n][MAX_COPIES + 1];
+        //f[i] is the distribution of accepted copies of card i, g[i] the rate at which card i is accepted
+        double[][] f = new double[n][MAX_COPIES + 1];
+        double[][] g = new double[n][MAX_COPIES];
+        //F is the product of the f polynomials; G is the sum over cards c of g[c] times the product of the others
+        double[][] prefixF = new double[n + 1][DEGREE + 1];
+        double[][] prefixG = new double[n + 1][DEGREE + 1];
+        double[][] suffixF = new double[n + 1][DEGREE + 1];
+        double[][] suffixG = new double[n + 1][DEGREE + 1];
+        prefixF[0][0] = 1;
+        suffixF[n][0] = 1;
+        double total = 0;
+        double start = 0;
+        while(true) {
+            //panels widen with time, like the spread of the completion time does
+            double width = 4 + start / 8;
+            double panel = 0;
+            for(int node = 0; node < GAUSS_NODES.length; node++) {
+                double t = start + width * (GAUSS_NODES[node] + 1) / 2;
+                double weight = width * GAUSS_WEIGHTS[node] / 2;
+                for(int i = 0; i < n; i++) {
+                    poisson(rates[i] * t, f[i]);
+                    for(int m = 0; m < MAX_COPIES; m++) {
+                        g[i][m] = rates[i] * f[i][m];
+                    }
+                }
+                for(int i = 0; i < n; i++) {
+                    multiply(prefixF[i], prefixG[i], f[i], g[i], prefixF[i + 1], prefixG[i + 1]);
+                }
+                for(int i = n - 1; i >= 0; i--) {
+                    multiply(suffixF[i + 1], suffixG[i + 1], f[i], g[i], suffixF[i], suffixG[i]);
+                }
+                panel += weight * prefixG[n][DEGREE - 1];
+                for(int i = 0; i < n; i++) {
+                    double[] pf = prefixF[i], pg = prefixG[i], sf = suffixF[i + 1], sg = suffixG[i + 1];
+                    for(int k = 0; k <= MAX_COPIES; k++) {
+                        double density = f[i][k] * (coefficient(pg, sf, DEGREE - 1 - k) + coefficient(pf, sg, DEGREE - 1 - k));
+                        if(k > 0)
+                            density += g[i][k - 1] * coefficient(pf, sf, DEGREE - k);
+                        result[i][k] += weight * density;
+                    }
+                }
+            }
+            total += panel;
+            start += width;
+            if(total > 0.5 && panel < 1e-16)
+                break;
+        }
+        //remove what little quadrature error there is, so that each distribution adds up to 1
+        for(double[] distribution : result) {
+            for(int k = 0; k <= MAX_COPIES; k++) {
+                distribution[k] /= total;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Fills {@code into} with the probabilities of 0, 1, 2 and at least 3 events of a Poisson
+     * distribution with the given mean.
+     */
+    private static void poisson(double mean, double[] into) {
+        double p = Math.exp(-mean);
+        double sum = 0;
+        for(int m = 0; m < MAX_COPIES; m++) {
+            into[m] = p;
+            sum += p;
+            p *= mean / (m + 1);
+        }
+        if(mean > 1) {
+            into[MAX_COPIES] = Math.max(0, 1 - sum);
+        }
+        else {
+            //sum the tail directly, since 1 - sum cancels badly for small means
+            double tail = 0;
+            for(int m = MAX_COPIES; p > 1e-20 * tail; m++) {
+                tail += p;
+                p *= mean / (m + 1);
+            }
+            into[MAX_COPIES] = tail;
+        }
+    }
+    
+    /**
+     * Multiplies (F, G) by one card: F' = F f and G' = G f + F g, truncated to the degree.
+     */
+    private static void multiply(double[] inF, double[] inG, double[] f, double[] g, double[] outF, double[] outG) {
+        for(int j = 0; j <= DEGREE; j++) {
+            double sumF = 0, sumG = 0;
+            for(int m = 0, end = Math.min(j, MAX_COPIES); m <= end; m++) {
+                sumF += f[m] * inF[j - m];
+                sumG += f[m] * inG[j - m];
+                if(m < MAX_COPIES)
+                    sumG += g[m] * inF[j - m];
+            }
+            outF[j] = sumF;
+            outG[j] = sumG;
+        }
+    }
+    
+    /**
+     * Returns the coefficient of x<sup>j</sup> in the product of two polynomials.
+     */
+    private static double coefficient(double[] a, double[] b, int j) {
+        double sum = 0;
+        for(int i = 0; i <= j; i++) {
+            sum += a[i] * b[j - i];
+        }
+        return sum;
+    }
+}
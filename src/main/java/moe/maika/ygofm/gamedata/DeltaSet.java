@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A set of deltas within a window {@code [start, end)}, stored as a bitset with one bit per
+ * delta. Query results over millions of deltas take a few hundred kilobytes and can be
+ * combined with {@link #and(DeltaSet)}, {@link #or(DeltaSet)} and {@link #andNot(DeltaSet)}.
+ * <p>
+ * Instances are immutable once returned by this library.
+ * @author sg4e
+ */
+public final class DeltaSet {
+    
+    private final int start, end;
+    private final long[] words;
+    
+    /**
+     * Creates an empty set over a window, for the library to fill in.
+     */
+    DeltaSet(int start, int end) {
+        if(start > end)
+            throw new IllegalArgumentException(String.format("Start value %d is greater than end value %d", start, end));
+        this.start = start;
+        this.end = end;
+        words = new long[(int) (((long) end - start + 63) >>> 6)];
+    }
+    
+    private DeltaSet(int start, int end, long[] words) {
+        this.start = start;
+        this.end = end;
+        this.words = words;
+    }
+    
+    /**
+     * Adds a delta. Not thread-safe, except that threads may add deltas concurrently if each
+     * works on its own 64-aligned run of deltas (relative to the start).
+     */
+    void add(int delta) {
+        long offset = (long) delta - start;
+        words[(int) (offset >>> 6)] |= 1L << offset;
+    }
+    
+    /**
+     * Returns the first delta of the window.
+     * @return the start of the window, inclusive
+     */
+    public int getStart() {
+        return start;
+    }
+    
+    /**
+     * Returns the delta after the last delta of the window.
+     * @return the end of the window, exclusive
+     */
+    public int getEnd() {
+        return end;
+    }
+    
+    /**
+     * Returns whether the set contains a delta.
+     * @param delta a delta
+     * @return true if the delta is in the set
+     */
+    public boolean contains(int delta) {
+        if(delta < start || delta >= end)
+            return false;
+        long offset = (long) delta - start;
+        return (words[(int) (offset >>> 6)] & (1L << offset)) != 0;
+    }
+    
+    /**
+     * Returns the number of deltas in the set.
+     * @return the number of deltas in the set
+     */
+    public int size() {
+        int size = 0;
+        for(long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+    
+    /**
+     * Returns whether the set is empty.
+     * @return true if the set contains no deltas
+     */
+    public boolean isEmpty() {
+        for(long word : words) {
+            if(word != 0)
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the first delta in the set that is at least the given delta, such as the next
+     * delta reachable from the current RNG state.
+     * @param from the smallest delta to consider
+     * @return the first delta in the set at or after {@code from}, or empty if there is none
+     */
+    public OptionalInt next(int from) {
+        long offset = Math.max((long) from - start, 0);
+        if(offset >= (long) end - start)
+            return OptionalInt.empty();
+        int w = (int) (offset >>> 6);
+        long word = words[w] & (-1L << offset);
+        while(true) {
+            if(word != 0)
+                return OptionalInt.of((int) (start + ((long) w << 6) + Long.numberOfTrailingZeros(word)));
+            if(++w == words.length)
+                return OptionalInt.empty();
+            word = words[w];
+        }
+    }
+    
+    /**
+     * Returns the deltas in the set in ascending order.
+     * @return a stream of the deltas in the set
+     */
+    public IntStream stream() {
+        return IntStream.range(0, words.length).flatMap(w -> {
+            long word = words[w];
+            int[] deltas = new int[Long.bitCount(word)];
+            for(int i = 0; word != 0; i++) {
+                deltas[i] = (int) (start + ((long) w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+            return IntStream.of(deltas);
+        });
+    }
+    
+    /**
+     * Returns the deltas in the set in ascending order.
+     * @return a new array of the deltas in the set
+     */
+    public int[] toArray() {
+        return stream().toArray();
+    }
+    
+    /**
+     * Returns the deltas that are in both sets. The sets must have the same window.
+     * @param other another set over the same window
+     * @return a new set with the intersection
+     */
+    public DeltaSet and(DeltaSet other) {
+        long[] result = checkWindow(other);
+        for(int i = 0; i < result.length; i++) {
+            result[i] &= other.words[i];
+        }
+        return new DeltaSet(start, end, result);
+    }
+    
+    /**
+     * Returns the deltas that are in either set. The sets must have the same window.
+     * @param other another set over the same window
+     * @return a new set with the union
+     */
+    public DeltaSet or(DeltaSet other) {
+        long[] result = checkWindow(other);
+        for(int i = 0; i < result.length; i++) {
+            result[i] |= other.words[i];
+        }
+        return new DeltaSet(start, end, result);
+    }
+    
+    /**
+     * Returns the deltas in this set that are not in the other. The sets must have the same window.
+     * @param other another set over the same window
+     * @return a new set with the difference
+     */
+    public DeltaSet andNot(DeltaSet other) {
+        long[] result = checkWindow(other);
+        for(int i = 0; i < result.length; i++) {
+            result[i] &= ~other.words[i];
+        }
+        return new DeltaSet(start, end, result);
+    }
+    
+    private long[] checkWindow(DeltaSet other) {
+        if(start != other.start || end != other.end)
+            throw new IllegalArgumentException(String.format("Windows differ: [%d, %d) and [%d, %d)", start, end, other.start, other.end));
+        return words.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + start;
+        hash = 31 * hash + end;
+        hash = 31 * hash + Arrays.hashCode(words);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final DeltaSet other = (DeltaSet) obj;
+        return start == other.start && end == other.end && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public String toString() {
+        int size = size();
+        String shown = stream().limit(20).mapToObj(Integer::toString).collect(Collectors.joining(", "));
+        return "DeltaSet[" + start + ", " + end + "){" + shown + (size > 20 ? ", ... (" + size + " deltas)" : "") + "}";
+    }
+}
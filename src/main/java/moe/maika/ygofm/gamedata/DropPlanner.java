@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the deltas at which a duelist drops one of a set of cards after a duel. The drop is
+ * decided by a single {@code rand()} call from the duelist's pool for the duel rank, so this
+ * class tabulates, for all 32,768 values {@code rand()} can return, whether the pool drops a
+ * target card, and then sweeps the window of deltas in parallel, one LCG step per delta.
+ * <p>
+ * A delta here is the RNG state right before the drop's {@code rand()} call, counted from an
+ * initial seed. Instances are immutable and thread-safe.
+ * @author sg4e
+ */
+public class DropPlanner {
+    
+    /**
+     * The number of values FM's {@code rand()} can return.
+     */
+    private static final int RAND_VALUES = 0x8000;
+    /**
+     * How many consecutive deltas a worker thread sweeps at once. A multiple of 64, so that
+     * workers fill disjoint words of a {@link DeltaSet}.
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+    
+    private final Duelist duelist;
+    private final Pool.Type rank;
+    private final Pool pool;
+    
+    /**
+     * Creates a drop planner for a duelist and duel rank.
+     * @param duelist the duelist
+     * @param rank the pool of the duel rank: {@link Pool.Type#SA_POW}, {@link Pool.Type#BCD} or {@link Pool.Type#SA_TEC}
+     */
+    public DropPlanner(Duelist duelist, Pool.Type rank) {
+        if(rank == Pool.Type.DECK)
+            throw new IllegalArgumentException("The deck pool is not a drop pool");
+        this.duelist = duelist;
+        this.rank = rank;
+        pool = duelist.getPool(rank);
+    }
+    
+    /**
+     * Returns the duelist whose drops are planned.
+     * @return the duelist
+     */
+    public Duelist getDuelist() {
+        return duelist;
+    }
+    
+    /**
+     * Returns the duel rank whose pool is used.
+     * @return the pool type of the duel rank
+     */
+    public Pool.Type getRank() {
+        return rank;
+    }
+    
+    /**
+     * Returns the probability that a random drop is one of the target cards.
+     * @param targets the cards wanted
+     * @return the probability of dropping one of them
+     */
+    public double getProbability(Collection<Card> targets) {
+        boolean[] table = tabulate(targets);
+        int hits = 0;
+        for(boolean hit : table) {
+            if(hit)
+                hits++;
+        }
+        return hits / (double) RAND_VALUES;
+    }
+    
+    /**
+     * Finds the deltas from the RNG at boot that drop one of the target cards.
+     * @param targets the cards wanted
+     * @param start the first delta, inclusive
+     * @param end the last delta, exclusive
+     * @return the deltas that drop a target card
+     */
+    public DeltaSet findDrops(Collection<Card> targets, int start, int end) {
+        return findDrops(targets, new RNG(), start, end);
+    }
+    
+    /**
+     * Finds the deltas that drop one of the target cards.
+     * @param targets the cards wanted
+     * @param initialSeed the RNG state that deltas are counted from
+     * @param start the first delta, inclusive
+     * @param end the last delta, exclusive
+     * @return the deltas that drop a target card
+     */
+    public DeltaSet findDrops(Collection<Card> targets, RNG initialSeed, int start, int end) {
+        DeltaSet result = new DeltaSet(start, end);
+        boolean[] table = tabulate(targets);
+        int origin = initialSeed.getSeed();
+        long size = (long) end - start;
+        int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            long blockStart = start + (long) b * BLOCK_SIZE;
+            long blockEnd = Math.min(blockStart + BLOCK_SIZE, end);
+            int seed = RNG.jump(origin, blockStart & 0xFFFFFFFFL);
+            for(long delta = blockStart; delta < blockEnd; delta++) {
+                seed = RNG.next(seed);
+                if(table[RNG.value(seed)])
+                    result.add((int) delta);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Tabulates whether each {@code rand()} value drops a target card.
+     */
+    private boolean[] tabulate(Collection<Card> targets) {
+        boolean[] table = new boolean[RAND_VALUES];
+        for(int rand = 0; rand < RAND_VALUES; rand++) {
+            Card drop = pool.getDrop(rand);
+            table[rand] = drop != null && targets.contains(drop);
+        }
+        return table;
+    }
+}
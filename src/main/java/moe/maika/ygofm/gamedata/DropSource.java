@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+/**
+ * A place a card can be obtained from: a duelist's pool of a given type, with the probability
+ * of the card in that pool. Get the sources of a card from {@link FMDB#getDropSources(Card)}.
+ * <p>
+ * Instances are immutable.
+ * @author sg4e
+ */
+public class DropSource {
+    
+    private final Card card;
+    private final Duelist duelist;
+    private final Pool.Type type;
+    private final int probability;
+
+    DropSource(Card card, Duelist duelist, Pool.Type type, int probability) {
+        this.card = card;
+        this.duelist = duelist;
+        this.type = type;
+        this.probability = probability;
+    }
+
+    /**
+     * Returns the card obtained from this source.
+     * @return the card
+     */
+    public Card getCard() {
+        return card;
+    }
+
+    /**
+     * Returns the duelist whose pool this is.
+     * @return the duelist
+     */
+    public Duelist getDuelist() {
+        return duelist;
+    }
+
+    /**
+     * Returns the type of the pool, which for drops is the duel rank.
+     * @return the pool type
+     */
+    public Pool.Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the probability of the card in the pool (out of 2048).
+     * @return the probability of the card (out of 2048)
+     */
+    public int getProbability() {
+        return probability;
+    }
+
+    @Override
+    public String toString() {
+        return duelist + " " + type + " " + probability + "/2048";
+    }
+}
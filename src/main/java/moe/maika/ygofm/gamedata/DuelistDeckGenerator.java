@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates AI decks from a duelist's deck pool without allocating. The 3-copy limit is
+ * enforced with a per-card-id counter and the cards are written into a buffer that is
+ * reused by every call, so one instance can generate decks for millions of seeds. Use
+ * {@link Deck#createDuelistDeck(DuelistDeckGenerator, RNG)} to get a deck out of it, or read
+ * the cards with {@link #getCard(int)} to avoid allocating a {@link Deck} at all.
+ * <p>
+ * Instances hold their buffer as state, so each thread needs its own.
+ * @author sg4e
+ */
+public final class DuelistDeckGenerator {
+    
+    private final Duelist duelist;
+    private final Pool pool;
+    private final Card[] cards = new Card[Deck.DECK_SIZE];
+    private final byte[] copies;
+    private int calls;
+    
+    /**
+     * Creates a generator for a duelist's decks.
+     * @param duelist the duelist whose decks to generate
+     */
+    public DuelistDeckGenerator(Duelist duelist) {
+        if(duelist == null)
+            throw new IllegalArgumentException("Duelist cannot be null");
+        this.duelist = duelist;
+        pool = duelist.getPool(Pool.Type.DECK);
+        copies = new byte[FMDB.getInstance().getCardIdBound()];
+    }
+    
+    /**
+     * Returns the duelist whose decks this generator creates.
+     * @return the duelist
+     */
+    public Duelist getDuelist() {
+        return duelist;
+    }
+    
+    /**
+     * Generates a deck and advances the RNG past it, exactly like the game does before a duel.
+     * The deck is available from {@link #getCard(int)} until the next call.
+     * @param seed the RNG
+     */
+    public void generate(RNG seed) {
+        synchronized(seed) {
+            generate(seed.getSeed());
+            seed.advance(calls);
+        }
+    }
+    
+    /**
+     * Generates a deck, starting from the given seed. The deck is available from
+     * {@link #getCard(int)} until the next call.
+     * @param seed the seed before the first {@code rand()} call
+     * @return the seed after the last {@code rand()} call
+     */
+    int generate(int seed) {
+        int i = 0;
+        calls = 0;
+        while(i < Deck.DECK_SIZE) {
+            seed = RNG.next(seed);
+            calls++;
+            Card dropped = pool.getDrop(RNG.value(seed));
+            //jumping off the end of a pool that doesn't add up to 2048 skips the card
+            if(dropped == null)
+                continue;
+            //decks are limited to 3 copies of a card
+            int id = dropped.getId();
+            if(copies[id] < 3) {
+                copies[id]++;
+                cards[i++] = dropped;
+            }
+        }
+        for(Card card : cards) {
+            copies[card.getId()] = 0;
+        }
+        return seed;
+    }
+    
+    /**
+     * Returns a card of the last deck generated, in the order the cards were added.
+     * @param position the position in the deck, from 0 to 39
+     * @return the card at the position
+     */
+    public Card getCard(int position) {
+        if(position < 0 || position >= Deck.DECK_SIZE)
+            throw new IllegalArgumentException("Position must be between 0 and " + (Deck.DECK_SIZE - 1) + ": " + position);
+        return cards[position];
+    }
+    
+    /**
+     * Returns the last deck generated, in the order the cards were added. This copies the deck.
+     * @return the cards of the deck
+     */
+    public List<Card> getCards() {
+        return Collections.unmodifiableList(Arrays.asList(cards.clone()));
+    }
+    
+    /**
+     * Returns the deck from the last call to {@link #generate(int)}, in the order the cards
+     * were added. The array is reused and must not be modified.
+     */
+    Card[] getBuffer() {
+        return cards;
+    }
+    
+    /**
+     * Returns how many {@code rand()} calls the last call to {@link #generate(int)} made.
+     */
+    int getCalls() {
+        return calls;
+    }
+}
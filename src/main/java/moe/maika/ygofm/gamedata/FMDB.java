@@ -23,14 +23,19 @@
  */
 package moe.maika.ygofm.gamedata;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -47,10 +52,25 @@ public class FMDB {
     
     private final Map<Integer,Card> cardMap;
     private final Map<Integer,Duelist> duelistMap;
-    // first card id -> second card id -> result card
-    private final Map<Integer,Map<Integer,Card>> fusionMap;
+    private final Card[] cardsById;
+    // one past the highest card id, the stride of the fusion table
+    private final int cardIdBound;
+    // first card id * cardIdBound + second card id -> result card id, or 0; symmetric
+    private final short[] fusionTable;
+    // material1, material2, result for every fusion
+    private final int[] fusionTriples;
+    // built on first use
+    private volatile FusionIndex fusionIndex;
     private final Map<Integer,Set<Integer>> equipMap;
     private final Map<Integer,Ritual> ritualMap;
+    // pool type -> card id -> sources by descending probability
+    private final Map<Pool.Type,Map<Integer,List<DropSource>>> dropSourceMap;
+    // card id -> drop rank sources by descending probability
+    private final Map<Integer,List<DropSource>> dropRankSourceMap;
+    /**
+     * The pool types that cards are dropped from after a duel, as opposed to {@link Pool.Type#DECK}.
+     */
+    private static final Set<Pool.Type> DROP_RANKS = Collections.unmodifiableSet(EnumSet.of(Pool.Type.SA_POW, Pool.Type.BCD, Pool.Type.SA_TEC));
     
     public static final String RITUAL_TYPE = "Ritual";
     public static final String TRAP_TYPE = "Trap";
@@ -77,9 +97,31 @@ public class FMDB {
                 e -> new Duelist(idToName.get(e.getKey()), e.getValue().stream().collect(
                     Collectors.groupingBy(RawDropPool::getType)).entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
                     e2 -> new Pool(e2.getValue().stream().map(p -> new Pool.Entry(cardMap.get(p.getCardId()), p.getProbability())).collect(Collectors.toList())))))));
-        fusionMap = Arrays.stream(rawFusions).collect(Collectors.groupingBy(RawFusion::getMaterial1, Collectors.toMap(RawFusion::getMaterial2, i -> cardMap.get(i.getResult()))));
+        fusionTriples = Arrays.stream(rawFusions).flatMapToInt(f -> IntStream.of(f.getMaterial1(), f.getMaterial2(), f.getResult())).toArray();
+        cardIdBound = cardMap.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        cardsById = new Card[cardIdBound];
+        cardMap.values().forEach(card -> cardsById[card.getId()] = card);
+        fusionTable = new short[cardIdBound * cardIdBound];
+        for(RawFusion fusion : rawFusions) {
+            fusionTable[fusion.getMaterial1() * cardIdBound + fusion.getMaterial2()] = (short) fusion.getResult();
+            fusionTable[fusion.getMaterial2() * cardIdBound + fusion.getMaterial1()] = (short) fusion.getResult();
+        }
         equipMap = Arrays.stream(rawEquips).collect(Collectors.groupingBy(RawEquip::getEquipId, Collectors.mapping(RawEquip::getCardId, Collectors.toSet())));
         ritualMap = Arrays.stream(RawDatabase.getRawRitual()).collect(Collectors.toMap(Ritual::getRitualCardId, r -> new Ritual(r.getRitualCardId(), r.getMaterial1(), r.getMaterial2(), r.getMaterial3(), r.getResultId())));
+        //reverse index of the pools, so that finding who drops a card doesn't scan every pool
+        Comparator<DropSource> byProbability = Comparator.comparingInt(DropSource::getProbability).reversed()
+                .thenComparingInt(source -> source.getDuelist().getId()).thenComparing(DropSource::getType);
+        List<DropSource> sources = duelistMap.values().stream()
+                .flatMap(d -> Arrays.stream(Pool.Type.values()).filter(type -> d.getPool(type) != null)
+                        .flatMap(type -> d.getPool(type).getAllEntries(e -> e.getProbability() > 0).stream()
+                                .map(e -> new DropSource(e.getCard(), d, type, e.getProbability()))))
+                .sorted(byProbability)
+                .collect(Collectors.toList());
+        dropSourceMap = new EnumMap<>(Pool.Type.class);
+        for(Pool.Type type : Pool.Type.values()) {
+            dropSourceMap.put(type, indexDropSources(sources.stream().filter(source -> source.getType() == type)));
+        }
+        dropRankSourceMap = indexDropSources(sources.stream().filter(source -> DROP_RANKS.contains(source.getType())));
         //rituals still need to initialize some state that relies on the FMDB instance having been set up
         //this is done in the getInstance() static method
     }
@@ -90,7 +132,13 @@ public class FMDB {
      * @return the card with the given id, or null if no such card exists
      */
     public Card getCard(int id) {
-        return cardMap.get(id);
+        return id > 0 && id < cardIdBound ? cardsById[id] : null;
+    }
+    
+    private static Map<Integer,List<DropSource>> indexDropSources(Stream<DropSource> sorted) {
+        return sorted.collect(Collectors.collectingAndThen(
+                Collectors.groupingBy(source -> source.getCard().getId(), Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)),
+                Collections::unmodifiableMap));
     }
     
     /**
@@ -130,18 +178,19 @@ public class FMDB {
         return new HashSet<>(duelistMap.values());
     }
 
-    private Card fuseSimple(int firstCardId, int secondCardId) {
-        Map<Integer,Card> availableFusions = fusionMap.get(firstCardId);
-        if(availableFusions == null)
-            return null;
-        return availableFusions.get(secondCardId);
+    /**
+     * Returns the id of the result of fusing two cards in either order, or 0 if they don't fuse.
+     * This is a single read of the dense fusion table, for callers that fuse ids in bulk.
+     */
+    int fuseIds(int firstCardId, int secondCardId) {
+        if(firstCardId <= 0 || secondCardId <= 0 || firstCardId >= cardIdBound || secondCardId >= cardIdBound)
+            return 0;
+        return fusionTable[firstCardId * cardIdBound + secondCardId];
     }
 
     private Card fuseImpl(int firstCardId, int secondCardId) {
-        Card firstCheck = fuseSimple(firstCardId, secondCardId);
-        if(firstCheck != null)
-            return firstCheck;
-        return fuseSimple(secondCardId, firstCardId);
+        int result = fuseIds(firstCardId, secondCardId);
+        return result == 0 ? null : cardsById[result];
     }
 
     /**
@@ -171,7 +220,140 @@ public class FMDB {
     public Card fuseOrNull(Card firstCard, Card secondCard) {
         return fuseImpl(firstCard.getId(), secondCard.getId());
     }
-    
+
+    /**
+     * Fuses card ids in bulk: {@code out[i]} becomes the id of the result of fusing
+     * {@code first[i]} and {@code second[i]}, or 0 if they don't fuse. Ids that don't belong
+     * to any card never fuse. This method doesn't allocate, so it is suitable for fusing
+     * millions of pairs without going through {@link Card} objects.
+     * @param first the first card ids of the pairs
+     * @param second the second card ids of the pairs
+     * @param out the array to write the result ids to, which may be one of the inputs
+     * @throws IllegalArgumentException if the arrays don't have the same length
+     */
+    public void fuseAll(int[] first, int[] second, int[] out) {
+        if(first.length != second.length || first.length != out.length)
+            throw new IllegalArgumentException("Arrays must have the same length");
+        short[] table = fusionTable;
+        int bound = cardIdBound;
+        for(int i = 0; i < out.length; i++) {
+            int a = first[i];
+            int b = second[i];
+            out[i] = a > 0 && b > 0 && a < bound && b < bound ? table[a * bound + b] : 0;
+        }
+    }
+
+    /**
+     * Finds every pair of cards in a hand that fuse: bit {@code j} of {@code rows[i]} is set
+     * if the cards at {@code i} and {@code j} fuse, so the matrix is symmetric. A card only
+     * fuses with itself if the hand holds another copy of it, in which case both bits of the
+     * pair are set but bit {@code i} of {@code rows[i]} is not. This method doesn't allocate.
+     * @param cardIds the card ids of the hand
+     * @param count the number of cards in the hand, at most 64
+     * @param rows the array to write the first {@code count} rows of the matrix to
+     * @return the number of unordered pairs that fuse
+     * @throws IllegalArgumentException if the count is out of range for the arrays
+     */
+    public int fusionAdjacency(int[] cardIds, int count, long[] rows) {
+        if(count < 0 || count > Long.SIZE || count > cardIds.length || count > rows.length)
+            throw new IllegalArgumentException("Invalid hand size: " + count);
+        short[] table = fusionTable;
+        int bound = cardIdBound;
+        int pairs = 0;
+        for(int i = 0; i < count; i++) {
+            rows[i] = 0;
+        }
+        for(int i = 0; i < count; i++) {
+            int a = cardIds[i];
+            if(a <= 0 || a >= bound)
+                continue;
+            int row = a * bound;
+            long bits = 0;
+            for(int j = i + 1; j < count; j++) {
+                int b = cardIds[j];
+                if(b > 0 && b < bound && table[row + b] != 0) {
+                    bits |= 1L << j;
+                    rows[j] |= 1L << i;
+                }
+            }
+            rows[i] |= bits;
+            pairs += Long.bitCount(bits);
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns every pair of materials that fuses into the given card.
+     * @param result the result of the fusions
+     * @return the fusions into the card, ordered by their first and then second material ids;
+     * empty if the card is not the result of any fusion
+     * @throws IllegalArgumentException if the card is null
+     */
+    public List<Fusion> getFusionsInto(Card result) {
+        if(result == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        FusionIndex index = getFusionIndex();
+        int id = result.getId();
+        if(id <= 0 || id >= cardIdBound)
+            return Collections.emptyList();
+        List<Fusion> fusions = new ArrayList<>(index.pairStart[id + 1] - index.pairStart[id]);
+        for(int i = index.pairStart[id]; i < index.pairStart[id + 1]; i++) {
+            fusions.add(new Fusion(cardsById[index.pairs[2 * i]], cardsById[index.pairs[2 * i + 1]], result));
+        }
+        return Collections.unmodifiableList(fusions);
+    }
+
+    /**
+     * Returns every card that fuses with the given card. The card itself is included if two
+     * copies of it fuse.
+     * @param card a card
+     * @return the fusion partners of the card, ordered by id; empty if the card doesn't fuse
+     * @throws IllegalArgumentException if the card is null
+     */
+    public List<Card> getFusionPartners(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        FusionIndex index = getFusionIndex();
+        int id = card.getId();
+        if(id <= 0 || id >= cardIdBound)
+            return Collections.emptyList();
+        List<Card> partners = new ArrayList<>(index.partnerStart[id + 1] - index.partnerStart[id]);
+        for(int i = index.partnerStart[id]; i < index.partnerStart[id + 1]; i++) {
+            partners.add(cardsById[index.partners[i]]);
+        }
+        return Collections.unmodifiableList(partners);
+    }
+
+    /**
+     * Returns the reverse indexes of the fusion table, building them on first use.
+     */
+    FusionIndex getFusionIndex() {
+        FusionIndex localRef = fusionIndex;
+        if(localRef == null) {
+            synchronized(this) {
+                localRef = fusionIndex;
+                if(localRef == null)
+                    fusionIndex = localRef = new FusionIndex(fusionTriples, cardIdBound);
+            }
+        }
+        return localRef;
+    }
+
+    /**
+     * Returns one past the highest card id, for sizing arrays indexed by card id.
+     */
+    int getCardIdBound() {
+        return cardIdBound;
+    }
+
+    /**
+     * Returns every fusion as consecutive (material 1, material 2, result) card id triples.
+     * The array is shared and must not be modified.
+     */
+    int[] getFusionTriples() {
+        return fusionTriples;
+    }
+
     /**
      * Determines whether a monster can be equipped with an equip card.
      * Consider using {@link Card#equips(Card)} or {@link Card#canBeEquippedWith(Card)}
@@ -195,6 +377,37 @@ public class FMDB {
         return equippableCards.contains(monster.getId());
     }
 
+    /**
+     * Returns every duelist and duel rank that drops the given card after a duel, i.e., the
+     * {@link Pool.Type#SA_POW}, {@link Pool.Type#BCD} and {@link Pool.Type#SA_TEC} pools that
+     * contain it. The sources come from an index built when the database is loaded, so this
+     * method does not scan the pools.
+     * @param card a card
+     * @return an unmodifiable list of the sources, from the highest probability to the lowest;
+     * empty if the card is never dropped
+     * @throws IllegalArgumentException if {@code card} is null
+     */
+    public List<DropSource> getDropSources(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        return dropRankSourceMap.getOrDefault(card.getId(), Collections.emptyList());
+    }
+    
+    /**
+     * Returns every duelist whose pool of the given type contains the given card. Use
+     * {@link Pool.Type#DECK} to find the duelists that can have the card in their deck.
+     * @param card a card
+     * @param type the type of pool
+     * @return an unmodifiable list of the sources, from the highest probability to the lowest;
+     * empty if no pool of the type contains the card
+     * @throws IllegalArgumentException if {@code card} or {@code type} is null
+     */
+    public List<DropSource> getDropSources(Card card, Pool.Type type) {
+        if(card == null || type == null)
+            throw new IllegalArgumentException("Card and pool type cannot be null");
+        return dropSourceMap.get(type).getOrDefault(card.getId(), Collections.emptyList());
+    }
+
     /**
      * Returns the {@code Ritual} that is activated by the given ritual card id.
      * @param ritualCardId the id of the ritual card
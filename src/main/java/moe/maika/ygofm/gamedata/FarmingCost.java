@@ -0,0 +1,311 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Expected farming costs: how many duels it takes, on average, to obtain copies of a card from
+ * each duelist and duel rank that drops it. Each duel drops one card from the pool of its rank,
+ * so the number of duels to get {@code k} copies from a source that drops the card with
+ * probability {@code p} follows a negative binomial distribution with mean {@code k / p} and
+ * variance {@code k (1 - p) / p}<sup>2</sup>.
+ * <p>
+ * The probabilities of all cards in all pools are kept in one dense array indexed by card,
+ * duelist and pool type, and the per-source costs are derived from it with plain loops over
+ * primitive arrays, so the whole table is built in milliseconds. Instances are immutable and
+ * thread-safe; use {@link #getInstance()}.
+ * @author sg4e
+ */
+public final class FarmingCost {
+    
+    private static final int TYPES = Pool.Type.values().length;
+    private static final Pool.Type[] DROP_RANKS = { Pool.Type.SA_POW, Pool.Type.BCD, Pool.Type.SA_TEC };
+    private static final int MAX_COPIES = 3;
+    
+    private final Duelist[] duelistsById;
+    private final int duelistCount;
+    private final int cardCount;
+    /**
+     * The probability of each card in each pool, per duel, at
+     * {@code (cardId * duelistCount + duelistId) * TYPES + type.ordinal()}.
+     */
+    private final double[] probabilities;
+    /**
+     * The expected number of duels to get one copy, {@code 1 / p}, laid out like
+     * {@link #probabilities}; infinite where the card can't be obtained.
+     */
+    private final double[] duelsPerCopy;
+    /**
+     * The fewest expected duels to get one copy of each card from any drop rank, by card id.
+     */
+    private final double[] bestDuelsPerCopy;
+    
+    private static final class Holder {
+        private static final FarmingCost INSTANCE = new FarmingCost(FMDB.getInstance());
+    }
+    
+    private FarmingCost(FMDB db) {
+        int maxDuelistId = db.getAllDuelists().stream().mapToInt(Duelist::getId).max().orElse(0);
+        duelistCount = maxDuelistId + 1;
+        duelistsById = new Duelist[duelistCount];
+        db.getAllDuelists().forEach(d -> duelistsById[d.getId()] = d);
+        cardCount = db.getAllCards().stream().mapToInt(Card::getId).max().orElse(0) + 1;
+        probabilities = new double[cardCount * duelistCount * TYPES];
+        for(Duelist duelist : duelistsById) {
+            if(duelist == null)
+                continue;
+            for(Pool.Type type : Pool.Type.values()) {
+                Pool pool = duelist.getPool(type);
+                if(pool == null)
+                    continue;
+                for(Pool.Entry entry : pool.getAllEntries()) {
+                    probabilities[index(entry.getCard().getId(), duelist.getId(), type)] = entry.getProbability() / 2048.0;
+                }
+            }
+        }
+        duelsPerCopy = new double[probabilities.length];
+        for(int i = 0; i < probabilities.length; i++) {
+            duelsPerCopy[i] = 1 / probabilities[i];
+        }
+        bestDuelsPerCopy = new double[cardCount];
+        for(int card = 0; card < cardCount; card++) {
+            double best = Double.POSITIVE_INFINITY;
+            for(int duelist = 0; duelist < duelistCount; duelist++) {
+                for(Pool.Type rank : DROP_RANKS) {
+                    best = Math.min(best, duelsPerCopy[(card * duelistCount + duelist) * TYPES + rank.ordinal()]);
+                }
+            }
+            bestDuelsPerCopy[card] = best;
+        }
+    }
+    
+    /**
+     * Gets the farming costs of the game's drop pools, computing them on first use.
+     * @return the farming costs
+     */
+    public static FarmingCost getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private int index(int cardId, int duelistId, Pool.Type type) {
+        return (cardId * duelistCount + duelistId) * TYPES + type.ordinal();
+    }
+    
+    private int checkedIndex(Card card, Duelist duelist, Pool.Type type) {
+        if(card == null || duelist == null || type == null)
+            throw new IllegalArgumentException("Card, duelist and pool type cannot be null");
+        if(card.getId() >= cardCount || duelist.getId() >= duelistCount)
+            return -1;
+        return index(card.getId(), duelist.getId(), type);
+    }
+    
+    private int checkedDropIndex(Card card, Duelist duelist, Pool.Type rank) {
+        if(rank == Pool.Type.DECK)
+            throw new IllegalArgumentException("Deck pools don't drop cards; use a duel rank");
+        return checkedIndex(card, duelist, rank);
+    }
+    
+    private static void checkCard(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+    }
+    
+    private static void checkCopies(int copies) {
+        if(copies < 1 || copies > MAX_COPIES)
+            throw new IllegalArgumentException("Number of copies must be between 1 and 3: " + copies);
+    }
+    
+    /**
+     * Returns the probability that one card drawn from a pool is the given card.
+     * @param card a card
+     * @param duelist a duelist
+     * @param type the type of the duelist's pool
+     * @return the probability of the card in the pool
+     */
+    public double getProbability(Card card, Duelist duelist, Pool.Type type) {
+        int index = checkedIndex(card, duelist, type);
+        return index < 0 ? 0 : probabilities[index];
+    }
+    
+    /**
+     * Returns the expected number of duels to obtain the given number of copies of a card from one source.
+     * @param card a card
+     * @param duelist a duelist
+     * @param rank the duel rank
+     * @param copies the number of copies, from 1 to 3
+     * @return the expected number of duels; infinite if the source never drops the card
+     * @throws IllegalArgumentException if {@code rank} is {@link Pool.Type#DECK}, which isn't a duel rank
+     */
+    public double getExpectedDuels(Card card, Duelist duelist, Pool.Type rank, int copies) {
+        checkCopies(copies);
+        int index = checkedDropIndex(card, duelist, rank);
+        return index < 0 ? Double.POSITIVE_INFINITY : copies * duelsPerCopy[index];
+    }
+    
+    /**
+     * Returns the variance of the number of duels to obtain the given number of copies of a
+     * card from one source.
+     * @param card a card
+     * @param duelist a duelist
+     * @param rank the duel rank
+     * @param copies the number of copies, from 1 to 3
+     * @return the variance of the number of duels; infinite if the source never drops the card
+     * @throws IllegalArgumentException if {@code rank} is {@link Pool.Type#DECK}, which isn't a duel rank
+     */
+    public double getVariance(Card card, Duelist duelist, Pool.Type rank, int copies) {
+        checkCopies(copies);
+        int index = checkedDropIndex(card, duelist, rank);
+        if(index < 0 || probabilities[index] == 0)
+            return Double.POSITIVE_INFINITY;
+        double inverse = duelsPerCopy[index];
+        return copies * (1 - probabilities[index]) * inverse * inverse;
+    }
+    
+    /**
+     * Returns the fewest expected duels to obtain copies of a card from any single source.
+     * @param card a card
+     * @param copies the number of copies, from 1 to 3
+     * @return the expected number of duels at the best source; infinite if the card is never dropped
+     */
+    public double getBestExpectedDuels(Card card, int copies) {
+        checkCard(card);
+        checkCopies(copies);
+        if(card.getId() >= cardCount)
+            return Double.POSITIVE_INFINITY;
+        return copies * bestDuelsPerCopy[card.getId()];
+    }
+    
+    /**
+     * Returns the best places to farm copies of a card, i.e. the sources with the fewest
+     * expected duels.
+     * @param card a card
+     * @param copies the number of copies, from 1 to 3
+     * @param limit the maximum number of sources to return
+     * @return up to {@code limit} sources that drop the card, the best first
+     */
+    public List<Estimate> getBestSources(Card card, int copies, int limit) {
+        checkCard(card);
+        checkCopies(copies);
+        if(limit < 0)
+            throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+        if(card.getId() >= cardCount)
+            return Collections.emptyList();
+        List<Estimate> sources = new ArrayList<>();
+        int base = card.getId() * duelistCount * TYPES;
+        for(int duelist = 0; duelist < duelistCount; duelist++) {
+            for(Pool.Type rank : DROP_RANKS) {
+                double p = probabilities[base + duelist * TYPES + rank.ordinal()];
+                if(p > 0)
+                    sources.add(new Estimate(card, duelistsById[duelist], rank, p, copies));
+            }
+        }
+        sources.sort(Comparator.comparingDouble(Estimate::getExpectedDuels)
+                .thenComparingInt(e -> e.getDuelist().getId()).thenComparing(Estimate::getRank));
+        return sources.size() > limit ? new ArrayList<>(sources.subList(0, limit)) : sources;
+    }
+    
+    /**
+     * The cost of farming copies of a card from one duelist and duel rank. Instances are immutable.
+     */
+    public static class Estimate {
+        private final Card card;
+        private final Duelist duelist;
+        private final Pool.Type rank;
+        private final double probability;
+        private final int copies;
+
+        private Estimate(Card card, Duelist duelist, Pool.Type rank, double probability, int copies) {
+            this.card = card;
+            this.duelist = duelist;
+            this.rank = rank;
+            this.probability = probability;
+            this.copies = copies;
+        }
+        
+        /**
+         * Returns the card being farmed.
+         * @return the card
+         */
+        public Card getCard() {
+            return card;
+        }
+        
+        /**
+         * Returns the duelist to farm.
+         * @return the duelist
+         */
+        public Duelist getDuelist() {
+            return duelist;
+        }
+        
+        /**
+         * Returns the duel rank to aim for.
+         * @return the pool type of the duel rank
+         */
+        public Pool.Type getRank() {
+            return rank;
+        }
+        
+        /**
+         * Returns the probability of the card dropping in one duel.
+         * @return the probability per duel
+         */
+        public double getProbability() {
+            return probability;
+        }
+        
+        /**
+         * Returns the number of copies being farmed.
+         * @return the number of copies
+         */
+        public int getCopies() {
+            return copies;
+        }
+        
+        /**
+         * Returns the expected number of duels.
+         * @return the mean of the number of duels
+         */
+        public double getExpectedDuels() {
+            return copies / probability;
+        }
+        
+        /**
+         * Returns the variance of the number of duels.
+         * @return the variance of the number of duels
+         */
+        public double getVariance() {
+            return copies * (1 - probability) / (probability * probability);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s x%d from %s %s: %.1f duels", card.getName(), copies, duelist, rank, getExpectedDuels());
+        }
+    }
+}
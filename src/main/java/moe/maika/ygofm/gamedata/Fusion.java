@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Objects;
+
+/**
+ * A fusion in Forbidden Memories: two materials and the card they fuse into. Fusions work in
+ * either order, so the first material is always the one with the lower id. Get the fusions of
+ * a card from {@link FMDB#getFusionsInto(Card)}.
+ * <p>
+ * Instances are immutable.
+ * @author sg4e
+ */
+public class Fusion {
+    
+    private final Card firstMaterial;
+    private final Card secondMaterial;
+    private final Card result;
+
+    Fusion(Card firstMaterial, Card secondMaterial, Card result) {
+        this.firstMaterial = firstMaterial;
+        this.secondMaterial = secondMaterial;
+        this.result = result;
+    }
+
+    /**
+     * Returns the material with the lower id.
+     * @return the first material
+     */
+    public Card getFirstMaterial() {
+        return firstMaterial;
+    }
+
+    /**
+     * Returns the material with the higher id, which is the same card as the first material
+     * if the fusion takes two copies of it.
+     * @return the second material
+     */
+    public Card getSecondMaterial() {
+        return secondMaterial;
+    }
+
+    /**
+     * Returns the result of the fusion.
+     * @return the result
+     */
+    public Card getResult() {
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj)
+            return true;
+        if(!(obj instanceof Fusion))
+            return false;
+        Fusion other = (Fusion) obj;
+        return firstMaterial.equals(other.firstMaterial) && secondMaterial.equals(other.secondMaterial) && result.equals(other.result);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(firstMaterial, secondMaterial, result);
+    }
+
+    @Override
+    public String toString() {
+        return firstMaterial + " + " + secondMaterial + " = " + result;
+    }
+}
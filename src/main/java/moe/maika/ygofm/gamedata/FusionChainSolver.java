@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Finds the best card a hand can put on the field by chaining fusions. A chain plays cards
+ * left to right: each card fuses with the result so far, and replaces it if they don't fuse,
+ * exactly like {@link FMDB#fuse(Card, Card)}. A chain may start from a monster already on the
+ * field. Outcomes are ranked by a configurable score, higher being better; see
+ * {@link #byAttack()}, {@link #byDefense()} and {@link #forTarget(Card)}.
+ * <p>
+ * Every ordered chain is considered, but they are solved as subproblems on the current card and
+ * the bitmask of the cards still in hand, which are memoized, so solving a 5-card hand takes a
+ * few microseconds. Of the chains with the best score, the shortest is returned. Each solver
+ * holds the scratch memo, so each thread needs its own.
+ * @author sg4e
+ */
+public final class FusionChainSolver {
+    
+    /**
+     * The most cards a player can hold, and the largest hand this solver accepts.
+     */
+    public static final int MAX_HAND_SIZE = 5;
+    private static final int MASKS = 1 << MAX_HAND_SIZE;
+    private static final byte STOP = -1;
+    
+    private final FMDB db;
+    // card id -> score
+    private final int[] scores;
+    // (card id << MAX_HAND_SIZE | remaining hand mask) -> memo, valid while stamps[i] == generation
+    private final int[] stamps;
+    private final int[] bestScores;
+    private final byte[] bestNext;
+    // the number of cards played after the current one in the best chain
+    private final byte[] bestLengths;
+    private int generation;
+    private final int[] hand = new int[MAX_HAND_SIZE];
+    
+    /**
+     * Creates a solver that ranks outcomes by the given score of the final card.
+     * @param scoring the score of each card, higher being better
+     */
+    public FusionChainSolver(ToIntFunction<Card> scoring) {
+        if(scoring == null)
+            throw new IllegalArgumentException("Scoring cannot be null");
+        db = FMDB.getInstance();
+        int bound = db.getAllCards().stream().mapToInt(Card::getId).max().orElse(0) + 1;
+        scores = new int[bound];
+        for(Card card : db.getAllCards()) {
+            scores[card.getId()] = scoring.applyAsInt(card);
+        }
+        stamps = new int[bound * MASKS];
+        bestScores = new int[bound * MASKS];
+        bestNext = new byte[bound * MASKS];
+        bestLengths = new byte[bound * MASKS];
+    }
+    
+    /**
+     * Creates a solver that finds the strongest attacker.
+     * @return a solver that ranks outcomes by ATK
+     */
+    public static FusionChainSolver byAttack() {
+        return new FusionChainSolver(Card::getAttack);
+    }
+    
+    /**
+     * Creates a solver that finds the strongest defender.
+     * @return a solver that ranks outcomes by DEF
+     */
+    public static FusionChainSolver byDefense() {
+        return new FusionChainSolver(Card::getDefense);
+    }
+    
+    /**
+     * Creates a solver that looks for a specific card. The target scores 1 and every other
+     * card 0.
+     * @param target the card to make
+     * @return a solver that ranks the target above any other outcome
+     */
+    public static FusionChainSolver forTarget(Card target) {
+        if(target == null)
+            throw new IllegalArgumentException("Target cannot be null");
+        return new FusionChainSolver(card -> card.getId() == target.getId() ? 1 : 0);
+    }
+    
+    /**
+     * Finds the best outcome of a hand with no monster on the field.
+     * @param hand the cards in hand
+     * @return the best chain
+     * @throws IllegalArgumentException if the hand is empty or has more than 5 cards
+     */
+    public Result solve(List<Card> hand) {
+        return solve(hand, null);
+    }
+    
+    /**
+     * Finds the best outcome of a hand, optionally starting chains from a monster on the field.
+     * Leaving the field monster as it is counts as an outcome.
+     * @param hand the cards in hand
+     * @param field the monster on the field, or null
+     * @return the best chain
+     * @throws IllegalArgumentException if the hand has more than 5 cards, or there are no cards at all
+     */
+    public Result solve(List<Card> hand, Card field) {
+        if(hand == null || hand.size() > MAX_HAND_SIZE || (hand.isEmpty() && field == null))
+            throw new IllegalArgumentException("Hand must have up to " + MAX_HAND_SIZE + " cards, or a field monster");
+        int count = hand.size();
+        for(int i = 0; i < count; i++) {
+            this.hand[i] = hand.get(i).getId();
+        }
+        int fieldId = field == null ? 0 : field.getId();
+        int start = solveIds(count, fieldId);
+        
+        List<Card> chain = new ArrayList<>(count + 1);
+        int current = start == STOP ? fieldId : this.hand[start];
+        int mask = start == STOP ? (1 << count) - 1 : (1 << count) - 1 & ~(1 << start);
+        chain.add(start == STOP ? field : hand.get(start));
+        int score = bestScores[current << MAX_HAND_SIZE | mask];
+        for(int next = bestNext[current << MAX_HAND_SIZE | mask]; next != STOP; next = bestNext[current << MAX_HAND_SIZE | mask]) {
+            chain.add(hand.get(next));
+            current = fuseOrReplace(current, this.hand[next]);
+            mask &= ~(1 << next);
+        }
+        return new Result(db.getCard(current), score, start == STOP, Collections.unmodifiableList(chain));
+    }
+    
+    /**
+     * Solves the first {@code count} ids of {@link #hand}, and returns the hand index of the
+     * card that starts the best chain, or {@link #STOP} if it starts from the field monster.
+     */
+    private int solveIds(int count, int fieldId) {
+        if(++generation == 0) {
+            //the stamps wrapped around, so old entries could look current
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        int all = (1 << count) - 1;
+        int bestStart = STOP;
+        int best = Integer.MIN_VALUE;
+        int bestLength = Integer.MAX_VALUE;
+        if(fieldId != 0) {
+            best = best(fieldId, all);
+            bestLength = bestLengths[fieldId << MAX_HAND_SIZE | all];
+        }
+        for(int i = 0; i < count; i++) {
+            int mask = all & ~(1 << i);
+            int score = best(hand[i], mask);
+            int length = bestLengths[hand[i] << MAX_HAND_SIZE | mask];
+            if(score > best || (score == best && length < bestLength)) {
+                best = score;
+                bestLength = length;
+                bestStart = i;
+            }
+        }
+        return bestStart;
+    }
+    
+    private int fuseOrReplace(int current, int next) {
+        int result = db.fuseIds(current, next);
+        return result == 0 ? next : result;
+    }
+    
+    private int best(int current, int mask) {
+        int key = current << MAX_HAND_SIZE | mask;
+        if(stamps[key] == generation)
+            return bestScores[key];
+        //stopping here is an option, and chains that score the same are ranked by length
+        int best = scores[current];
+        int bestLength = 0;
+        byte next = STOP;
+        for(int rest = mask; rest != 0; rest &= rest - 1) {
+            int i = Integer.numberOfTrailingZeros(rest);
+            int result = fuseOrReplace(current, hand[i]);
+            int remaining = mask & ~(1 << i);
+            int score = best(result, remaining);
+            int length = bestLengths[result << MAX_HAND_SIZE | remaining] + 1;
+            if(score > best || (score == best && length < bestLength)) {
+                best = score;
+                bestLength = length;
+                next = (byte) i;
+            }
+        }
+        stamps[key] = generation;
+        bestScores[key] = best;
+        bestNext[key] = next;
+        bestLengths[key] = (byte) bestLength;
+        return best;
+    }
+    
+    /**
+     * The best outcome of a hand: the final card, its score and the chain that makes it.
+     * Instances are immutable.
+     */
+    public static class Result {
+        private final Card card;
+        private final int score;
+        private final boolean fromField;
+        private final List<Card> chain;
+
+        private Result(Card card, int score, boolean fromField, List<Card> chain) {
+            this.card = card;
+            this.score = score;
+            this.fromField = fromField;
+            this.chain = chain;
+        }
+        
+        /**
+         * Returns the card on the field at the end of the chain.
+         * @return the resulting card
+         */
+        public Card getCard() {
+            return card;
+        }
+        
+        /**
+         * Returns the score of the resulting card.
+         * @return the score
+         */
+        public int getScore() {
+            return score;
+        }
+        
+        /**
+         * Returns whether the chain starts from the field monster.
+         * @return true if the first card of the chain is the field monster
+         */
+        public boolean isFromField() {
+            return fromField;
+        }
+        
+        /**
+         * Returns the cards in the order they are played, starting with the field monster if
+         * {@link #isFromField()}. Cards of the hand that aren't listed are not played.
+         * @return the chain
+         */
+        public List<Card> getChain() {
+            return chain;
+        }
+
+        @Override
+        public String toString() {
+            return chain + " -> " + card + " (" + score + ")";
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.Arrays;
+
+/**
+ * Reverse indexes of the fusion table in primitive arrays: the material pairs of every result,
+ * and the partners every card fuses with. Both are compressed rows indexed by card id; the
+ * rows of card {@code id} span {@code [start[id], start[id + 1])}. The partners are also kept
+ * as a bitset per card, {@link #words} longs each, for set operations like {@link CardSet}'s.
+ * {@link FMDB} builds this lazily on first use. The arrays are shared and must not be modified.
+ * @author sg4e
+ */
+final class FusionIndex {
+    
+    // result id -> (material1, material2) pairs at pairs[2 * i], pairs[2 * i + 1], sorted, material1 <= material2
+    final int[] pairStart;
+    final int[] pairs;
+    // card id -> ids of the cards it fuses with, ascending
+    final int[] partnerStart;
+    final int[] partners;
+    // longs per card in partnerBits
+    final int words;
+    // card id -> bitset of the ids of the cards it fuses with, at [id * words, (id + 1) * words)
+    final long[] partnerBits;
+    
+    FusionIndex(int[] fusionTriples, int cardIdBound) {
+        int fusionCount = fusionTriples.length / 3;
+        long[] sorted = new long[fusionCount];
+        for(int i = 0; i < fusionCount; i++) {
+            int a = fusionTriples[3 * i], b = fusionTriples[3 * i + 1];
+            //card ids fit in 16 bits, so one sort orders by result, then materials
+            sorted[i] = (long) fusionTriples[3 * i + 2] << 32 | (long) Math.min(a, b) << 16 | Math.max(a, b);
+        }
+        Arrays.sort(sorted);
+        pairStart = new int[cardIdBound + 1];
+        pairs = new int[fusionCount * 2];
+        int[] partnerCount = new int[cardIdBound + 1];
+        for(int i = 0; i < fusionCount; i++) {
+            int a = (int) (sorted[i] >>> 16 & 0xFFFF), b = (int) (sorted[i] & 0xFFFF);
+            pairStart[(int) (sorted[i] >>> 32) + 1]++;
+            pairs[2 * i] = a;
+            pairs[2 * i + 1] = b;
+            partnerCount[a + 1]++;
+            if(a != b)
+                partnerCount[b + 1]++;
+        }
+        for(int id = 0; id < cardIdBound; id++) {
+            pairStart[id + 1] += pairStart[id];
+            partnerCount[id + 1] += partnerCount[id];
+        }
+        partnerStart = partnerCount;
+        partners = new int[partnerStart[cardIdBound]];
+        int[] fill = Arrays.copyOf(partnerStart, cardIdBound);
+        for(int i = 0; i < fusionCount; i++) {
+            int a = pairs[2 * i], b = pairs[2 * i + 1];
+            partners[fill[a]++] = b;
+            if(a != b)
+                partners[fill[b]++] = a;
+        }
+        for(int id = 0; id < cardIdBound; id++) {
+            Arrays.sort(partners, partnerStart[id], partnerStart[id + 1]);
+        }
+        words = (cardIdBound + 63) >>> 6;
+        partnerBits = new long[cardIdBound * words];
+        for(int id = 0; id < cardIdBound; id++) {
+            for(int i = partnerStart[id]; i < partnerStart[id + 1]; i++) {
+                partnerBits[id * words + (partners[i] >>> 6)] |= 1L << partners[i];
+            }
+        }
+    }
+}
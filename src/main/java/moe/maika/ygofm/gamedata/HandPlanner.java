@@ -0,0 +1,315 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the deltas at which the game's shuffle gives the player a chosen opening hand or draw
+ * order. This is the forward counterpart of {@link SeedSearch}: instead of recovering the seed
+ * from cards that were drawn, it sweeps a window of deltas and tests the top of each shuffled
+ * deck with a predicate.
+ * <p>
+ * A delta is the RNG state at the start of the duel, before the player's deck is shuffled,
+ * counted from an initial seed. Each match reports how many {@code rand()} calls it is from a
+ * current RNG state, which need not be on the same delta count. The sweep uses the fastest
+ * {@link SeedSearchBackend} for scanning unless one is set, and runs in parallel in waves of
+ * blocks in ascending delta order, so that a search limited to N matches stops early and still
+ * returns the first N.
+ * <p>
+ * This class is NOT thread-safe, like {@link SeedSearch}. Create instances with a {@link Builder}.
+ * @author sg4e
+ */
+public class HandPlanner {
+    
+    /**
+     * How many consecutive seeds a worker thread scans at once.
+     */
+    private static final int BLOCK_SIZE = 4096;
+    
+    private final Deck deck;
+    private final Predicate<? super List<Card>> hand;
+    private Comparator<? super Card> sort = Deck.CARD_ID_ORDER;
+    private int length = HandProbability.HAND_SIZE;
+    private int spaceStart = 0;
+    private int spaceEnd = SeedSearch.DEFAULT_SEARCH_SPACE;
+    private RNG initialSeed = new RNG();
+    private RNG currentState = null;
+    private int maxResults = Integer.MAX_VALUE;
+    private SeedSearchBackend backend = null;
+    
+    private HandPlanner(Deck deck, Predicate<? super List<Card>> hand) {
+        this.deck = deck;
+        this.hand = hand;
+    }
+    
+    /**
+     * Sweeps the window and returns the matching deltas.
+     * @return the matches in ascending order of delta, at most the maximum number of results
+     */
+    public List<Match> plan() {
+        Deck startingDeck = new Deck(deck);
+        startingDeck.sort(sort);
+        int[] startingIds = startingDeck.toList().stream().mapToInt(Card::getId).toArray();
+        Card[] cardsById = new Card[Arrays.stream(startingIds).max().getAsInt() + 1];
+        startingDeck.toList().forEach(c -> cardsById[c.getId()] = c);
+        SeedSearchBackend scanBackend = backend == null ? SeedSearchBackends.calibratedScanner(startingIds, length) : backend;
+        int origin = initialSeed.getSeed();
+        int current = (currentState == null ? initialSeed : currentState).getSeed();
+        long size = (long) spaceEnd - spaceStart;
+        int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        //without a limit the whole window is needed anyway, so it is one wave
+        int waveSize = maxResults == Integer.MAX_VALUE ? Math.max(blocks, 1) : 4 * Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        List<Match> matches = new ArrayList<>();
+        for(int wave = 0; wave < blocks && matches.size() < maxResults; wave += waveSize) {
+            List<List<Match>> found = IntStream.range(wave, Math.min(wave + waveSize, blocks)).parallel().mapToObj(b -> {
+                long blockStart = spaceStart + (long) b * BLOCK_SIZE;
+                int count = (int) Math.min(BLOCK_SIZE, spaceEnd - blockStart);
+                List<Match> blockMatches = new ArrayList<>();
+                CardView view = new CardView(cardsById, length);
+                //index i of the scan shuffles from the seed i + 1 calls after this one, which is delta blockStart + i
+                int seed = RNG.jump(origin, (blockStart - 1) & 0xFFFFFFFFL);
+                scanBackend.newScanner(startingIds).scan(seed, count, length, (i, prefix) -> {
+                    view.ids = prefix;
+                    if(hand.test(view)) {
+                        int matchSeed = RNG.jump(seed, i + 1L);
+                        RNG rng = new RNG(matchSeed, (int) (initialSeed.getDelta() + blockStart + i));
+                        blockMatches.add(new Match(rng, RNG.distance(current, matchSeed), new ArrayList<>(view)));
+                    }
+                });
+                return blockMatches;
+            }).collect(Collectors.toList());
+            found.forEach(matches::addAll);
+        }
+        return matches.size() > maxResults ? new ArrayList<>(matches.subList(0, maxResults)) : matches;
+    }
+    
+    /**
+     * A list view of the card ids a scanner reports, reused for every seed a worker thread tests.
+     */
+    private static class CardView extends AbstractList<Card> {
+        private final Card[] cardsById;
+        private final int length;
+        private int[] ids;
+
+        private CardView(Card[] cardsById, int length) {
+            this.cardsById = cardsById;
+            this.length = length;
+        }
+
+        @Override
+        public Card get(int index) {
+            if(index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            return cardsById[ids[index]];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+    
+    /**
+     * A delta at which the shuffle gives the desired cards. Instances are immutable.
+     */
+    public static class Match {
+        private final RNG rng;
+        private final long distance;
+        private final List<Card> cards;
+
+        private Match(RNG rng, long distance, List<Card> cards) {
+            this.rng = rng;
+            this.distance = distance;
+            this.cards = Collections.unmodifiableList(cards);
+        }
+        
+        /**
+         * Returns the RNG state at the start of the duel.
+         * @return a copy of the RNG state that gives the desired cards
+         */
+        public RNG getRng() {
+            return new RNG(rng);
+        }
+        
+        /**
+         * Returns the delta of the match, counted like the planner's window.
+         * @return the delta
+         */
+        public int getDelta() {
+            return rng.getDelta();
+        }
+        
+        /**
+         * Returns how many {@code rand()} calls it takes to get from the current RNG state to
+         * this match; see {@link RNG#distance(int, int)}.
+         * @return the distance from the current state
+         */
+        public long getDistance() {
+            return distance;
+        }
+        
+        /**
+         * Returns the top of the shuffled deck that matched.
+         * @return the cards from the top of the deck down
+         */
+        public List<Card> getCards() {
+            return cards;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{delta=" + getDelta() + ", distance=" + distance + ", cards=" + cards + "}";
+        }
+    }
+    
+    /**
+     * A builder class to configure a {@link HandPlanner}.
+     */
+    public static class Builder {
+        private final HandPlanner planner;
+        private boolean built = false;
+        
+        /**
+         * Creates a new builder for a planner.
+         * @param deck the player's deck
+         * @param hand the condition on the top of the shuffled deck; it is given a list of the
+         * top cards, from the top down, that is only valid during the call
+         */
+        public Builder(Deck deck, Predicate<? super List<Card>> hand) {
+            planner = new HandPlanner(new Deck(deck), hand);
+        }
+        
+        /**
+         * Sets the sort order for the deck. The default is to sort by card ID.
+         * @param sorter the sort performed on the Build Deck screen before the duel
+         * @return this builder
+         */
+        public Builder withSort(Comparator<? super Card> sorter) {
+            check();
+            planner.sort = sorter;
+            return this;
+        }
+        
+        /**
+         * Sets how many cards from the top of the deck the predicate sees. The default is the
+         * opening hand of {@value HandProbability#HAND_SIZE} cards; use more to plan the draw order.
+         * @param length the number of cards, from 1 to 40
+         * @return this builder
+         */
+        public Builder withLength(int length) {
+            check();
+            if(length < 1 || length > Deck.DECK_SIZE)
+                throw new IllegalArgumentException("Length must be between 1 and " + Deck.DECK_SIZE + ": " + length);
+            planner.length = length;
+            return this;
+        }
+        
+        /**
+         * Sets the window of deltas to sweep. The default is 0 to 5,000,000.
+         * @param start the first delta, inclusive
+         * @param end the last delta, exclusive
+         * @return this builder
+         */
+        public Builder withSpace(int start, int end) {
+            check();
+            if(start > end)
+                throw new IllegalArgumentException(String.format("Start value %d is greater than end value %d", start, end));
+            planner.spaceStart = start;
+            planner.spaceEnd = end;
+            return this;
+        }
+        
+        /**
+         * Sets the RNG state that deltas are counted from. The default is the RNG at boot.
+         * @param initialSeed the initial seed
+         * @return this builder
+         */
+        public Builder withInitialSeed(RNG initialSeed) {
+            check();
+            planner.initialSeed = new RNG(initialSeed);
+            return this;
+        }
+        
+        /**
+         * Sets the RNG state that distances are measured from, such as the state the player is
+         * in now. The default is the initial seed.
+         * @param currentState the current RNG state
+         * @return this builder
+         */
+        public Builder withCurrentState(RNG currentState) {
+            check();
+            planner.currentState = new RNG(currentState);
+            return this;
+        }
+        
+        /**
+         * Stops the sweep once this many matches are found; the first ones in delta order are returned.
+         * @param maxResults the maximum number of matches
+         * @return this builder
+         */
+        public Builder withMaxResults(int maxResults) {
+            check();
+            if(maxResults < 1)
+                throw new IllegalArgumentException("Maximum results must be positive: " + maxResults);
+            planner.maxResults = maxResults;
+            return this;
+        }
+        
+        /**
+         * Sets the backend used to shuffle. The default is the fastest one on this machine.
+         * @param backend the backend
+         * @return this builder
+         */
+        public Builder withBackend(SeedSearchBackend backend) {
+            check();
+            planner.backend = backend;
+            return this;
+        }
+        
+        /**
+         * Builds the planner. This builder may not be used again.
+         * @return the planner
+         */
+        public HandPlanner build() {
+            check();
+            built = true;
+            return planner;
+        }
+        
+        private void check() {
+            if(built)
+                throw new IllegalStateException("Builder may not be reused after building an instance");
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Calculates the probability of drawing given cards from a deck. A query is a collection of
+ * cards that must all be among the cards drawn, where duplicates mean that several copies are
+ * required; it is satisfied by drawing at least that many copies of each card.
+ * <p>
+ * Probabilities are available in two flavors:
+ * <ul>
+ * <li>{@link #getProbabilities(List, int)} assumes a uniformly random shuffle and gives exact
+ * multivariate hypergeometric probabilities.</li>
+ * <li>{@link #getSeedProbabilities(List, int, Comparator, RNG, int, int)} shuffles the deck
+ * exactly as the game does for every RNG state in a delta window and counts the outcomes.
+ * The FM shuffle is only 160 random swaps, so its outcomes are not uniform and depend on the
+ * order of the deck before the duel.</li>
+ * </ul>
+ * Both take a batch of queries against the same number of drawn cards, so that one pass over the
+ * deck, or over the seeds, answers all of them. Instances are immutable and thread-safe.
+ * @author sg4e
+ */
+public class HandProbability {
+    
+    /**
+     * The number of cards in the player's hand at the start of a turn.
+     */
+    public static final int HAND_SIZE = 5;
+    /**
+     * How many consecutive seeds a worker thread evaluates in seed-exact mode.
+     */
+    private static final int BLOCK_SIZE = 4096;
+    private static final long[][] BINOMIALS = new long[Deck.DECK_SIZE + 1][Deck.DECK_SIZE + 1];
+    static {
+        for(int n = 0; n <= Deck.DECK_SIZE; n++) {
+            BINOMIALS[n][0] = 1;
+            for(int k = 1; k <= n; k++) {
+                BINOMIALS[n][k] = BINOMIALS[n - 1][k - 1] + BINOMIALS[n - 1][k];
+            }
+        }
+    }
+    
+    private final Deck deck;
+    /**
+     * The distinct cards of the deck in order of first appearance, and how many copies of each there are.
+     */
+    private final List<Card> distinct;
+    private final int[] copies;
+    private final Map<Card, Integer> indices = new HashMap<>();
+    
+    /**
+     * Creates a calculator for the given deck. The deck is copied.
+     * @param deck the deck to draw from
+     */
+    public HandProbability(Deck deck) {
+        this.deck = new Deck(deck);
+        Map<Card, Integer> counts = new LinkedHashMap<>();
+        deck.toList().forEach(card -> counts.merge(card, 1, Integer::sum));
+        distinct = Collections.unmodifiableList(new ArrayList<>(counts.keySet()));
+        copies = new int[distinct.size()];
+        for(int i = 0; i < distinct.size(); i++) {
+            indices.put(distinct.get(i), i);
+            copies[i] = counts.get(distinct.get(i));
+        }
+    }
+    
+    /**
+     * Returns how many cards the player has drawn by the start of the given turn, assuming one
+     * card leaves the hand each turn. The hand is refilled to {@value #HAND_SIZE} cards at the
+     * start of every turn, so turn 1 has seen 5 cards, turn 2 six, and so on. Fusions use up
+     * more than one card and draw correspondingly more.
+     * @param turn the turn, starting from 1
+     * @return the number of cards drawn by the start of the turn
+     */
+    public static int getCardsDrawnByTurn(int turn) {
+        if(turn < 1)
+            throw new IllegalArgumentException("Turns start at 1: " + turn);
+        return Math.min(HAND_SIZE + turn - 1, Deck.DECK_SIZE);
+    }
+    
+    /**
+     * Returns the exact probability of drawing all the required cards among the first
+     * {@code drawn} cards of a uniformly shuffled deck.
+     * @param required the cards that must be drawn, with a duplicate for each extra copy required
+     * @param drawn the number of cards drawn, from 0 to 40
+     * @return the probability that the query is satisfied
+     */
+    public double getProbability(Collection<Card> required, int drawn) {
+        return getProbabilities(Collections.singletonList(required), drawn)[0];
+    }
+    
+    /**
+     * Returns the exact probabilities of a batch of queries among the first {@code drawn} cards of
+     * a uniformly shuffled deck.
+     * @param queries the queries, each a collection of the cards that must be drawn
+     * @param drawn the number of cards drawn, from 0 to 40
+     * @return the probability of each query, in the same order
+     */
+    public double[] getProbabilities(List<? extends Collection<Card>> queries, int drawn) {
+        checkDrawn(drawn);
+        double[] probabilities = new double[queries.size()];
+        for(int q = 0; q < probabilities.length; q++) {
+            probabilities[q] = getFavorableHands(queries.get(q), drawn) / (double) BINOMIALS[Deck.DECK_SIZE][drawn];
+        }
+        return probabilities;
+    }
+    
+    /**
+     * Returns the number of the C(40, {@code drawn}) equally likely sets of drawn cards that
+     * satisfy a query. Positions in the deck are distinguished, so copies of a card are too.
+     * @param required the cards that must be drawn, with a duplicate for each extra copy required
+     * @param drawn the number of cards drawn, from 0 to 40
+     * @return the number of favorable sets of drawn cards
+     */
+    public long getFavorableHands(Collection<Card> required, int drawn) {
+        checkDrawn(drawn);
+        int[][] requirements = toRequirements(required);
+        if(requirements == null)
+            return 0;
+        //ways[s] counts the ways to draw s cards from the required kinds with enough of each
+        long[] ways = new long[drawn + 1];
+        ways[0] = 1;
+        int others = Deck.DECK_SIZE;
+        for(int[] requirement : requirements) {
+            int available = copies[requirement[0]];
+            others -= available;
+            long[] next = new long[drawn + 1];
+            for(int s = 0; s <= drawn; s++) {
+                if(ways[s] == 0)
+                    continue;
+                for(int x = requirement[1]; x <= available && s + x <= drawn; x++) {
+                    next[s + x] += ways[s] * BINOMIALS[available][x];
+                }
+            }
+            ways = next;
+        }
+        long favorable = 0;
+        for(int s = 0; s <= drawn; s++) {
+            if(drawn - s <= others)
+                favorable += ways[s] * BINOMIALS[others][drawn - s];
+        }
+        return favorable;
+    }
+    
+    /**
+     * Returns the probabilities of a batch of queries over the game's real shuffles. For every
+     * delta {@code d} in {@code [start, end)}, the deck is sorted with the given sort and shuffled
+     * from the RNG state {@code d} calls after {@code initialSeed}, as before a duel, and the
+     * queries are checked against its first {@code drawn} cards. The window is split between
+     * worker threads.
+     * @param queries the queries, each a collection of the cards that must be drawn
+     * @param drawn the number of cards drawn, from 0 to 40
+     * @param sort the sort of the deck on the Build Deck screen before the duel
+     * @param initialSeed the RNG state that deltas are counted from, such as {@code new RNG()}
+     * @param start the first delta of the window, inclusive
+     * @param end the last delta of the window, exclusive
+     * @return the fraction of the window in which each query is satisfied, in the same order
+     */
+    public double[] getSeedProbabilities(List<? extends Collection<Card>> queries, int drawn, Comparator<? super Card> sort, RNG initialSeed, int start, int end) {
+        checkDrawn(drawn);
+        if(start >= end)
+            throw new IllegalArgumentException(String.format("Start value %d is not less than end value %d", start, end));
+        int[][][] requirements = queries.stream().map(this::toRequirements).toArray(int[][][]::new);
+        Deck startingDeck = new Deck(deck);
+        startingDeck.sort(sort);
+        int[] startingIndices = startingDeck.toList().stream().mapToInt(indices::get).toArray();
+        int origin = initialSeed.getSeed();
+        long size = (long) end - start;
+        int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        long[] satisfied = IntStream.range(0, blocks).parallel().mapToObj(b -> {
+            long blockStart = start + (long) b * BLOCK_SIZE;
+            int count = (int) Math.min(BLOCK_SIZE, end - blockStart);
+            long[] hits = new long[requirements.length];
+            ShuffleEvaluator shuffler = new ShuffleEvaluator(startingIndices, new int[0]);
+            int[] scratch = new int[Deck.DECK_SIZE];
+            int[] drawnCopies = new int[copies.length];
+            int seed = RNG.jump(origin, blockStart & 0xFFFFFFFFL);
+            for(int i = 0; i < count; i++) {
+                System.arraycopy(startingIndices, 0, scratch, 0, Deck.DECK_SIZE);
+                shuffler.shuffle(scratch, seed);
+                for(int c = 0; c < drawn; c++) {
+                    drawnCopies[scratch[c]]++;
+                }
+                for(int q = 0; q < requirements.length; q++) {
+                    if(isSatisfied(requirements[q], drawnCopies))
+                        hits[q]++;
+                }
+                for(int c = 0; c < drawn; c++) {
+                    drawnCopies[scratch[c]] = 0;
+                }
+                seed = RNG.next(seed);
+            }
+            return hits;
+        }).reduce(new long[requirements.length], (a, b) -> {
+            long[] sum = new long[a.length];
+            for(int q = 0; q < sum.length; q++) {
+                sum[q] = a[q] + b[q];
+            }
+            return sum;
+        });
+        double[] probabilities = new double[satisfied.length];
+        for(int q = 0; q < probabilities.length; q++) {
+            probabilities[q] = satisfied[q] / (double) size;
+        }
+        return probabilities;
+    }
+    
+    /**
+     * Converts a query to pairs of (distinct card index, copies required), or null if the deck
+     * doesn't have enough copies to ever satisfy it.
+     */
+    private int[][] toRequirements(Collection<Card> required) {
+        Map<Integer, Integer> needed = new LinkedHashMap<>();
+        for(Card card : required) {
+            Integer index = indices.get(card);
+            if(index == null)
+                return null;
+            needed.merge(index, 1, Integer::sum);
+        }
+        int[][] requirements = new int[needed.size()][];
+        int i = 0;
+        for(Map.Entry<Integer, Integer> e : needed.entrySet()) {
+            if(e.getValue() > copies[e.getKey()])
+                return null;
+            requirements[i++] = new int[] { e.getKey(), e.getValue() };
+        }
+        return requirements;
+    }
+    
+    private static boolean isSatisfied(int[][] requirements, int[] drawnCopies) {
+        if(requirements == null)
+            return false;
+        for(int[] requirement : requirements) {
+            if(drawnCopies[requirement[0]] < requirement[1])
+                return false;
+        }
+        return true;
+    }
+    
+    private static void checkDrawn(int drawn) {
+        if(drawn < 0 || drawn > Deck.DECK_SIZE)
+            throw new IllegalArgumentException("Number of cards drawn must be between 0 and " + Deck.DECK_SIZE + ": " + drawn);
+    }
+}
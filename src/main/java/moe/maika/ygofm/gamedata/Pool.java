@@ -23,9 +23,9 @@
  */
 package moe.maika.ygofm.gamedata;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -39,10 +39,27 @@ import java.util.stream.Collectors;
  */
 public class Pool {
 
+    /**
+     * The number of values {@code rand() % 2048} can take.
+     */
+    private static final int POOL_TOTAL = 2048;
+    
     private final SortedMap<Integer, Entry> entries;
+    /**
+     * The card dropped for each value of {@code rand() % 2048}, or null past the end of a pool
+     * that doesn't add up to 2048.
+     */
+    private final Card[] drops = new Card[POOL_TOTAL];
 
     Pool(Collection<Entry> data) {
         entries = new TreeMap<>(data.stream().collect(Collectors.toMap(e -> e.getCard().getId(), Function.identity())));
+        //lay the entries out in card id order, the same order the game walks them in
+        int start = 0;
+        for(Entry e : entries.values()) {
+            int end = Math.min(start + Math.max(e.getProbability(), 0), POOL_TOTAL);
+            Arrays.fill(drops, start, end, e.getCard());
+            start = end;
+        }
     }
 
     /**
@@ -68,15 +85,12 @@ public class Pool {
         'jump off' the end of the pool, the card is also automatically skipped. 
         This does not come up in vanilla.
          */
-        rand = rand % 2048;
-        for(Map.Entry<Integer,Entry> mapEntry : entries.entrySet()) {
-            Entry e = mapEntry.getValue();
-            rand -= e.getProbability();
-            if(rand < 0)
-                return e.getCard();
-        }
+        rand = rand % POOL_TOTAL;
+        //FM's rand() is never negative, but a negative value drops the first card, as walking the pool would
+        if(rand < 0)
+            return entries.isEmpty() ? null : entries.get(entries.firstKey()).getCard();
         //returns null if bugged or if droppool is missing entries
-        return null;
+        return drops[rand];
     }
     
     /**
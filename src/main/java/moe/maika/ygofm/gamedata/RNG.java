@@ -44,6 +44,9 @@ public class RNG {
     seed is a 32-bit value whose initial value at game boot is 0x55555555.
     */
     
+    static final int MULTIPLIER = 0x41C64E6D;
+    static final int INCREMENT = 0x3039;
+    
     private int seed, delta;
     
     /**
@@ -80,8 +83,20 @@ public class RNG {
      */
     public synchronized int rand() {
         delta++;
-        seed = 0x41C64E6D * seed + 0x3039;
-        return (seed >>> 16) & 0x7FFF;
+        seed = next(seed);
+        return value(seed);
+    }
+    
+    /**
+     * Advances the RNG state as though {@code rand()} had been called the given number
+     * of times. Unlike calling {@link #rand()} in a loop, this takes logarithmic time, so
+     * it is suitable for jumping millions of calls ahead. Because the RNG has a period of
+     * 2<sup>32</sup>, a negative argument rewinds the RNG by that many calls.
+     * @param calls the number of {@code rand()} calls to skip
+     */
+    public synchronized void advance(int calls) {
+        seed = jump(seed, calls & 0xFFFFFFFFL);
+        delta += calls;
     }
     
     /**
@@ -107,12 +122,68 @@ public class RNG {
      * @return a new RNG with the given seed value
      */
     public static RNG fromDelta(int delta) {
-        //can be implemented via a lookup table for workloads that rather use deltas
         RNG rng = new RNG();
-        for(int i = 0; i < delta; i++) {
-            rng.rand();
-        }
+        rng.advance(delta);
         return rng;
     }
     
+    /**
+     * Returns how many {@code rand()} calls it takes to get from one seed to another, which is
+     * always possible because the RNG visits every 32-bit seed once per period. This is the
+     * inverse of {@link #advance(int)}, and takes 32 steps at most no matter how far apart
+     * the seeds are.
+     * @param fromSeed the current seed
+     * @param toSeed the seed to reach
+     * @return the number of {@code rand()} calls, from 0 to 2<sup>32</sup> - 1
+     */
+    public static long distance(int fromSeed, int toSeed) {
+        //fix the bits of the distance from the lowest up: bit k of the seed only depends on the
+        //low k bits of the distance, and advancing by 2^k calls flips bit k and keeps the ones below
+        int mul = MULTIPLIER;
+        int add = INCREMENT;
+        long distance = 0;
+        for(int bit = 0; bit < 32 && fromSeed != toSeed; bit++) {
+            int mask = 1 << bit;
+            if(((fromSeed ^ toSeed) & mask) != 0) {
+                fromSeed = mul * fromSeed + add;
+                distance |= 1L << bit;
+            }
+            add = mul * add + add;
+            mul *= mul;
+        }
+        return distance;
+    }
+    
+    /**
+     * Returns the seed that follows the given seed after one {@code rand()} call.
+     */
+    static int next(int seed) {
+        return MULTIPLIER * seed + INCREMENT;
+    }
+    
+    /**
+     * Returns the value {@code rand()} produces when it leaves the RNG in the given seed.
+     */
+    static int value(int seed) {
+        return (seed >>> 16) & 0x7FFF;
+    }
+    
+    /**
+     * Returns the seed reached from the given seed after the given number of {@code rand()}
+     * calls. The LCG step is an affine map, so it is composed with itself by repeated
+     * squaring rather than applied {@code calls} times.
+     */
+    static int jump(int seed, long calls) {
+        int mul = MULTIPLIER;
+        int add = INCREMENT;
+        while(calls > 0) {
+            if((calls & 1) != 0)
+                seed = mul * seed + add;
+            add = mul * add + add;
+            mul *= mul;
+            calls >>>= 1;
+        }
+        return seed;
+    }
+    
 }
@@ -0,0 +1,398 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Every way to make a card by chaining fusions in hand from a limited set of cards, such as a
+ * player's trunk or deck. A chain plays materials left to right and every fusion in it must
+ * succeed, so a {@link Recipe} is a left-deep tree: the first two materials fuse, and each
+ * further material fuses with the result so far.
+ * <p>
+ * Building a book runs a dynamic program over card ids and material budgets on the reverse
+ * fusion index of {@link FMDB}: the fewest materials that can make each card, and the number of
+ * chains of each length that end in it. Those are memoized for the life of the book, and bound
+ * the backward searches that find recipes within the copies actually available.
+ * {@link #getCheapestRecipes()} searches every card in parallel. Instances are immutable and
+ * thread-safe; use the {@link Builder}.
+ * @author sg4e
+ */
+public final class RecipeBook {
+    
+    /**
+     * The most materials a chain can use, which is the size of a player's hand.
+     */
+    public static final int MAX_MATERIALS = 5;
+    /**
+     * The copies of each card available when no cards are given, which is the most a deck can hold.
+     */
+    public static final int DEFAULT_COPIES = 3;
+    
+    private final FMDB db;
+    private final FusionIndex index;
+    private int maxMaterials = MAX_MATERIALS;
+    // card id -> copies available
+    private int[] copies;
+    // card id -> the fewest materials that make it, ignoring copies; 0 if it can't be made
+    private int[] minMaterials;
+    // [k][card id] -> number of chains of exactly k materials that make it, ignoring copies
+    private long[][] chains;
+    
+    private RecipeBook() {
+        db = FMDB.getInstance();
+        index = db.getFusionIndex();
+    }
+    
+    private void compute() {
+        int bound = index.partnerStart.length - 1;
+        if(copies == null) {
+            copies = new int[bound];
+            for(Card card : db.getAllCards()) {
+                copies[card.getId()] = DEFAULT_COPIES;
+            }
+        }
+        minMaterials = new int[bound];
+        chains = new long[maxMaterials + 1][bound];
+        for(int id = 0; id < bound; id++) {
+            if(copies[id] > 0) {
+                minMaterials[id] = 1;
+                chains[1][id] = 1;
+            }
+        }
+        for(int k = 1; k < maxMaterials; k++) {
+            long[] from = chains[k];
+            long[] to = chains[k + 1];
+            for(int id = 0; id < bound; id++) {
+                if(from[id] == 0)
+                    continue;
+                for(int i = index.partnerStart[id]; i < index.partnerStart[id + 1]; i++) {
+                    int partner = index.partners[i];
+                    if(copies[partner] == 0)
+                        continue;
+                    int result = db.fuseIds(id, partner);
+                    to[result] += from[id];
+                    if(minMaterials[result] == 0)
+                        minMaterials[result] = k + 1;
+                }
+            }
+        }
+    }
+    
+    private int checkedId(Card card) {
+        if(card == null)
+            throw new IllegalArgumentException("Card cannot be null");
+        return card.getId() < minMaterials.length ? card.getId() : 0;
+    }
+    
+    /**
+     * Returns the most materials a recipe of this book uses.
+     * @return the material budget
+     */
+    public int getMaxMaterials() {
+        return maxMaterials;
+    }
+    
+    /**
+     * Returns the fewest materials any chain needs to make a card, not counting how many
+     * copies of each material are available. This is a lower bound on the materials of
+     * {@link #getCheapestRecipe(Card)}.
+     * @param card the card to make
+     * @return the number of materials; 1 if the card itself is available, or 0 if no chain
+     * within the budget makes it
+     */
+    public int getMinMaterials(Card card) {
+        return minMaterials[checkedId(card)];
+    }
+    
+    /**
+     * Counts the chains within the budget that make a card, not counting how many copies of
+     * each material are available. Chains are ordered, so playing the same materials in
+     * another order counts again, and the card itself counts as a chain of one material.
+     * @param card the card to make
+     * @return the number of chains
+     */
+    public long countChains(Card card) {
+        int id = checkedId(card);
+        long count = 0;
+        for(int k = 1; k <= maxMaterials; k++) {
+            count += chains[k][id];
+        }
+        return count;
+    }
+    
+    /**
+     * Finds a chain with the fewest materials that makes a card from the available copies.
+     * @param card the card to make
+     * @return the cheapest recipe, or null if the card can't be made
+     */
+    public Recipe getCheapestRecipe(Card card) {
+        List<Recipe> recipes = getRecipes(card, 1);
+        return recipes.isEmpty() ? null : recipes.get(0);
+    }
+    
+    /**
+     * Finds chains that make a card from the available copies, the ones with fewer materials first.
+     * @param card the card to make
+     * @param limit the most recipes to return
+     * @return up to {@code limit} recipes
+     */
+    public List<Recipe> getRecipes(Card card, int limit) {
+        if(limit < 0)
+            throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+        int id = checkedId(card);
+        List<Recipe> recipes = new ArrayList<>();
+        if(minMaterials[id] == 0)
+            return recipes;
+        Search search = new Search(recipes, limit);
+        for(int k = minMaterials[id]; k <= maxMaterials && recipes.size() < limit; k++) {
+            search.find(id, k);
+        }
+        return recipes;
+    }
+    
+    /**
+     * Finds the cheapest recipe of every card that can be made, searching the cards in parallel.
+     * @return the cheapest recipe of each card, by card id
+     */
+    public Map<Card,Recipe> getCheapestRecipes() {
+        Recipe[] cheapest = new Recipe[minMaterials.length];
+        IntStream.range(1, minMaterials.length).parallel()
+                .filter(id -> minMaterials[id] > 0 && db.getCard(id) != null)
+                .forEach(id -> cheapest[id] = getCheapestRecipe(db.getCard(id)));
+        Map<Card,Recipe> all = new LinkedHashMap<>();
+        for(Recipe recipe : cheapest) {
+            if(recipe != null)
+                all.put(recipe.getResult(), recipe);
+        }
+        return all;
+    }
+    
+    /**
+     * A backward search from a result through the reverse fusion index, peeling the last
+     * material off the chain at each step while counting the copies it uses.
+     */
+    private class Search {
+        private final List<Recipe> recipes;
+        private final int limit;
+        private final int[] used = new int[copies.length];
+        private final int[] materials = new int[maxMaterials];
+        private final int[] results = new int[maxMaterials];
+        private int length;
+
+        Search(List<Recipe> recipes, int limit) {
+            this.recipes = recipes;
+            this.limit = limit;
+        }
+        
+        void find(int target, int k) {
+            length = k;
+            results[k - 1] = target;
+            search(target, k);
+        }
+        
+        /**
+         * Finds chains of exactly {@code k} materials that make the card, filling positions
+         * {@code k - 1} down to 0 of the materials; returns false once the limit is reached.
+         */
+        private boolean search(int card, int k) {
+            if(k == 1) {
+                if(used[card] >= copies[card])
+                    return true;
+                materials[0] = card;
+                results[0] = card;
+                recipes.add(new Recipe(Arrays.copyOf(materials, length), Arrays.copyOf(results, length)));
+                return recipes.size() < limit;
+            }
+            for(int i = index.pairStart[card]; i < index.pairStart[card + 1]; i++) {
+                int a = index.pairs[2 * i], b = index.pairs[2 * i + 1];
+                if(!step(card, k, a, b) || (a != b && !step(card, k, b, a)))
+                    return false;
+            }
+            return true;
+        }
+        
+        /**
+         * Tries making the card from a chain of {@code k - 1} materials into {@code previous},
+         * followed by {@code material}.
+         */
+        private boolean step(int card, int k, int previous, int material) {
+            if(used[material] >= copies[material] || chains[k - 1][previous] == 0)
+                return true;
+            used[material]++;
+            materials[k - 1] = material;
+            results[k - 2] = previous;
+            results[k - 1] = card;
+            boolean more = search(previous, k - 1);
+            used[material]--;
+            return more;
+        }
+    }
+    
+    /**
+     * A chain of fusions: materials played left to right, and the card on the field after each.
+     * Instances are immutable.
+     */
+    public class Recipe {
+        private final int[] materials;
+        private final int[] results;
+
+        private Recipe(int[] materials, int[] results) {
+            this.materials = materials;
+            this.results = results;
+        }
+        
+        /**
+         * Returns the card the chain makes.
+         * @return the result of the last fusion, or the only material
+         */
+        public Card getResult() {
+            return db.getCard(results[results.length - 1]);
+        }
+        
+        /**
+         * Returns the materials in the order they are played.
+         * @return the materials
+         */
+        public List<Card> getMaterials() {
+            return cards(materials);
+        }
+        
+        /**
+         * Returns the card after each material is played: the first material itself, and then
+         * the result of each fusion.
+         * @return the intermediate results, as many as there are materials
+         */
+        public List<Card> getIntermediateResults() {
+            return cards(results);
+        }
+        
+        /**
+         * Returns the number of materials in the chain.
+         * @return the number of materials
+         */
+        public int size() {
+            return materials.length;
+        }
+        
+        private List<Card> cards(int[] ids) {
+            List<Card> cards = new ArrayList<>(ids.length);
+            for(int id : ids) {
+                cards.add(db.getCard(id));
+            }
+            return Collections.unmodifiableList(cards);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(db.getCard(materials[0]).getName());
+            for(int i = 1; i < materials.length; i++) {
+                sb.append(" + ").append(db.getCard(materials[i]).getName()).append(" = ").append(db.getCard(results[i]).getName());
+            }
+            return sb.toString();
+        }
+    }
+    
+    /**
+     * A builder for {@link RecipeBook}. By default, every card is available with
+     * {@value #DEFAULT_COPIES} copies, and chains use up to {@value #MAX_MATERIALS} materials.
+     */
+    public static class Builder {
+        private final RecipeBook book;
+        private boolean built = false;
+        
+        /**
+         * Creates a new builder for a recipe book.
+         */
+        public Builder() {
+            book = new RecipeBook();
+        }
+        
+        /**
+         * Sets the cards that recipes can use, such as a trunk, with the number of copies of each.
+         * @param copies the number of copies of each card
+         * @return this builder
+         */
+        public Builder withCards(Map<Card,Integer> copies) {
+            check();
+            int[] counts = new int[book.index.partnerStart.length - 1];
+            copies.forEach((card, count) -> {
+                if(count < 0)
+                    throw new IllegalArgumentException("Number of copies cannot be negative: " + card + " " + count);
+                counts[card.getId()] = count;
+            });
+            book.copies = counts;
+            return this;
+        }
+        
+        /**
+         * Sets the cards that recipes can use, such as a deck, counting the copies of each.
+         * @param cards the cards
+         * @return this builder
+         */
+        public Builder withCards(Collection<Card> cards) {
+            check();
+            int[] counts = new int[book.index.partnerStart.length - 1];
+            cards.forEach(card -> counts[card.getId()]++);
+            book.copies = counts;
+            return this;
+        }
+        
+        /**
+         * Sets the most materials a chain can use.
+         * @param maxMaterials the material budget, from 1 to {@value #MAX_MATERIALS}
+         * @return this builder
+         */
+        public Builder withMaxMaterials(int maxMaterials) {
+            check();
+            if(maxMaterials < 1 || maxMaterials > MAX_MATERIALS)
+                throw new IllegalArgumentException("Materials must be between 1 and " + MAX_MATERIALS + ": " + maxMaterials);
+            book.maxMaterials = maxMaterials;
+            return this;
+        }
+        
+        /**
+         * Builds the recipe book, running the dynamic program over the fusions.
+         * @return the recipe book
+         */
+        public RecipeBook build() {
+            check();
+            built = true;
+            book.compute();
+            return book;
+        }
+        
+        private void check() {
+            if(built)
+                throw new IllegalStateException("Builder may not be reused after building an instance");
+        }
+    }
+}
@@ -23,13 +23,22 @@
  */
 package moe.maika.ygofm.gamedata;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -52,6 +61,14 @@ import java.util.stream.IntStream;
  * {@link #cancel()}. Note that even with modern processors and parallelization, the search can take
  * a few seconds to complete with the default search space, and longer with larger search spaces.
  * <p>
+ * Several initial seeds can be searched in the same job with {@link Builder#withInitialSeeds(Collection)};
+ * use {@link #searchByInitialSeed()} to find out which initial seed each hit belongs to.
+ * <p>
+ * How seeds are evaluated is up to a {@link SeedSearchBackend}. Unless one is set with
+ * {@link Builder#withBackend(SeedSearchBackend)}, the fastest backend on the current machine
+ * is picked by a short calibration the first time a search runs, and the choice is logged
+ * through {@code java.util.logging}.
+ * <p>
  * This class is NOT thread-safe. The class will parallelize its own search onto a worker pool of threads
  * in a thread-safe manner, but any external parallelization is not safe. Each search should be performed
  * with a new instance of this class and a new builder.
@@ -59,6 +76,8 @@ import java.util.stream.IntStream;
  */
 public class SeedSearch {
     
+    private static final Logger LOGGER = Logger.getLogger(SeedSearch.class.getName());
+    
     private final Deck deck;
     private final List<Card> drawnCards;
     private Comparator<? super Card> sort = Deck.CARD_ID_ORDER;
@@ -70,8 +89,15 @@ public class SeedSearch {
     private int spaceEnd = DEFAULT_SEARCH_SPACE;
     private Runnable iterCallback = null;
     private Consumer<RNG> hitCallback = null;
-    private RNG initialSeed = new RNG();
+    private List<RNG> initialSeeds = Collections.singletonList(new RNG());
+    private SeedSearchBackend backend = null;
+    private int expectedDelta = 0;
+    private Anytime anytime = null;
     private volatile boolean cancel = false;
+    /**
+     * How many consecutive seeds a worker thread evaluates between checks for cancellation.
+     */
+    private static final int BLOCK_SIZE = 4096;
     
     private SeedSearch(Deck d, List<Card> drawnCards) {
         if(drawnCards.size() > Deck.DECK_SIZE)
@@ -96,44 +122,362 @@ public class SeedSearch {
         return spaceEnd;
     }
     
+    Deck getDeck() {
+        return deck;
+    }
+    
+    List<Card> getDrawnCards() {
+        return drawnCards;
+    }
+    
+    Comparator<? super Card> getSort() {
+        return sort;
+    }
+    
+    List<RNG> getInitialSeeds() {
+        return initialSeeds;
+    }
+    
+    Consumer<RNG> getHitCallback() {
+        return hitCallback;
+    }
+    
+    /**
+     * The state one search shares between its worker threads.
+     */
+    private class Evaluation {
+        private final int[] startingCards;
+        private final int[] drawn;
+        private final SeedSearchBackend backend;
+        private final Map<Integer,Set<RNG>> validSeeds = new LinkedHashMap<>();
+        
+        private Evaluation() {
+            //make a copy of the deck and order it to the initial state
+            Deck startingDeck = new Deck(deck);
+            startingDeck.sort(sort);
+            startingCards = startingDeck.toList().stream().mapToInt(Card::getId).toArray();
+            drawn = drawnCards.stream().mapToInt(Card::getId).toArray();
+            backend = getBackend(startingCards, drawn);
+            initialSeeds.forEach(s -> validSeeds.put(s.getSeed(), Collections.synchronizedSet(new HashSet<>())));
+        }
+        
+        private void run(Block block) {
+            /*
+            Quoted from GenericMadScientist in the FM discord:
+
+            ORDER OF EVENTS:
+            Shuffle player deck, generate AI deck, shuffle AI deck.
+            */
+            RNG origin = initialSeeds.get(block.origin);
+            int count = block.end - block.start;
+            //jump straight to the start of the block instead of stepping through every seed before it
+            int blockSeed = RNG.jump(origin.getSeed(), block.start & 0xFFFFFFFFL);
+            Set<RNG> hits = validSeeds.get(origin.getSeed());
+            backend.newEvaluator(startingCards, drawn).evaluate(blockSeed, count, i -> {
+                RNG hit = new RNG(RNG.jump(blockSeed, i + 1), origin.getDelta() + block.start + i + 1);
+                hits.add(hit);
+                if(hitCallback != null)
+                    hitCallback.accept(new RNG(hit));
+            });
+            if(iterCallback != null) {
+                for(int i = 0; i < count; i++) {
+                    iterCallback.run();
+                }
+            }
+        }
+    }
+    
+    /**
+     * A contiguous run of deltas from one initial seed.
+     */
+    private static class Block {
+        private final int origin, start, end;
+
+        private Block(int origin, int start, int end) {
+            this.origin = origin;
+            this.start = start;
+            this.end = end;
+        }
+        
+        private long distanceTo(int delta) {
+            if(delta < start)
+                return (long) start - delta;
+            if(delta >= end)
+                return (long) delta - end + 1;
+            return 0;
+        }
+    }
+    
+    /**
+     * The state of a search that is run in installments by {@link #searchFor(long, TimeUnit)}.
+     */
+    private class Anytime {
+        private final Evaluation evaluation = new Evaluation();
+        private final Deque<Block> pending = new ArrayDeque<>(getBlocks());
+        private final List<TreeMap<Integer,Integer>> covered = new ArrayList<>();
+        
+        private Anytime() {
+            initialSeeds.forEach(s -> covered.add(new TreeMap<>()));
+        }
+        
+        private void cover(Block block) {
+            //merge with the neighboring ranges so that the progress stays compact
+            TreeMap<Integer,Integer> ranges = covered.get(block.origin);
+            int start = block.start;
+            int end = block.end;
+            Map.Entry<Integer,Integer> before = ranges.floorEntry(start);
+            if(before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+                ranges.remove(before.getKey());
+            }
+            Integer afterEnd = ranges.remove(end);
+            if(afterEnd != null)
+                end = afterEnd;
+            ranges.put(start, end);
+        }
+        
+        private Progress toProgress() {
+            Map<Integer,Set<RNG>> seeds = new LinkedHashMap<>();
+            Map<Integer,List<Range>> ranges = new LinkedHashMap<>();
+            for(int i = 0; i < initialSeeds.size(); i++) {
+                int key = initialSeeds.get(i).getSeed();
+                Set<RNG> hits = evaluation.validSeeds.get(key);
+                synchronized(hits) {
+                    seeds.put(key, Collections.unmodifiableSet(new HashSet<>(hits)));
+                }
+                int initialDelta = initialSeeds.get(i).getDelta();
+                ranges.put(key, Collections.unmodifiableList(covered.get(i).entrySet().stream()
+                        .map(e -> new Range(e.getKey(), e.getValue(), initialDelta)).collect(Collectors.toList())));
+            }
+            return new Progress(seeds, ranges, pending.isEmpty());
+        }
+    }
+    
+    /**
+     * A snapshot of the progress of a search run with {@link SeedSearch#searchFor(long, TimeUnit)}.
+     * Instances are immutable.
+     */
+    public static class Progress {
+        private final Map<Integer,Set<RNG>> seeds;
+        private final Map<Integer,List<Range>> covered;
+        private final boolean complete;
+
+        private Progress(Map<Integer,Set<RNG>> seeds, Map<Integer,List<Range>> covered, boolean complete) {
+            this.seeds = Collections.unmodifiableMap(seeds);
+            this.covered = Collections.unmodifiableMap(covered);
+            this.complete = complete;
+        }
+        
+        /**
+         * Returns the seeds found so far from all initial seeds.
+         * @return the seeds that produce the drawn cards found so far
+         */
+        public Set<RNG> getSeeds() {
+            Set<RNG> all = new HashSet<>();
+            seeds.values().forEach(all::addAll);
+            return all;
+        }
+        
+        /**
+         * Returns the seeds found so far, keyed like {@link SeedSearch#searchByInitialSeed()}.
+         * @return the seeds found so far by initial seed
+         */
+        public Map<Integer,Set<RNG>> getSeedsByInitialSeed() {
+            return seeds;
+        }
+        
+        /**
+         * Returns the delta ranges that have been searched completely, keyed by the seed value of
+         * their initial seed. The ranges are sorted, disjoint and not adjacent to each other, and
+         * use the same coordinates as {@link Builder#withSpace(int, int)}, which are not those of
+         * the seeds found; use {@link Range#containsHit(RNG)} to check whether a seed was found in a range.
+         * @return the searched delta ranges by initial seed
+         */
+        public Map<Integer,List<Range>> getCoveredRanges() {
+            return covered;
+        }
+        
+        /**
+         * Returns the total number of deltas searched across all initial seeds.
+         * @return the number of deltas searched
+         */
+        public long getCoveredCount() {
+            return covered.values().stream().flatMap(List::stream).mapToLong(Range::getLength).sum();
+        }
+        
+        /**
+         * Returns whether the whole search space has been searched.
+         * @return true if the search is complete
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+    
+    /**
+     * A half-open range of deltas, {@code [start, end)}, in the coordinates of
+     * {@link Builder#withSpace(int, int)}: offsets from the delta of the initial seed. The
+     * seed searched at offset {@code d} is the state after {@code d + 1} more {@code rand()}
+     * calls, so the seeds found in a range have deltas from
+     * {@code initial delta + start + 1} to {@code initial delta + end}. Instances are immutable.
+     */
+    public static class Range {
+        private final int start, end;
+        private final int initialDelta;
+
+        private Range(int start, int end, int initialDelta) {
+            this.start = start;
+            this.end = end;
+            this.initialDelta = initialDelta;
+        }
+        
+        /**
+         * Returns the first delta in the range.
+         * @return the start of the range, inclusive
+         */
+        public int getStart() {
+            return start;
+        }
+        
+        /**
+         * Returns the delta after the last delta in the range.
+         * @return the end of the range, exclusive
+         */
+        public int getEnd() {
+            return end;
+        }
+        
+        /**
+         * Returns the number of deltas in the range.
+         * @return the length of the range
+         */
+        public int getLength() {
+            return end - start;
+        }
+        
+        /**
+         * Returns whether the range contains the given offset of the search space.
+         * @param delta an offset, in the coordinates of {@link Builder#withSpace(int, int)}
+         * @return true if {@code start <= delta < end}
+         */
+        public boolean contains(int delta) {
+            return start <= delta && delta < end;
+        }
+        
+        /**
+         * Returns whether a seed found from this range's initial seed falls in the range.
+         * @param hit a seed found by the search, with the delta it reports
+         * @return true if the seed was searched as part of this range
+         */
+        public boolean containsHit(RNG hit) {
+            return contains(hit.getDelta() - initialDelta - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+    
+    private SeedSearchBackend getBackend(int[] startingCards, int[] drawn) {
+        if(backend != null) {
+            LOGGER.fine(() -> "Seed search backend: " + backend.getName() + ", set by the builder");
+            return backend;
+        }
+        return SeedSearchBackends.calibrated(startingCards, drawn);
+    }
+    
     /**
      * Performs the search.
      * @return a set of seeds that produce the drawn cards specified in the builder
      */
     public Set<RNG> search() {
-        //make a copy of the deck and order it to the initial state
-        Deck startingDeck = new Deck(deck);
-        startingDeck.sort(sort);
-        //copy seed to prevent side effects
-        RNG seedCopy = new RNG(initialSeed);
-        Set<RNG> validSeeds = Collections.synchronizedSet(new HashSet<>());
-        //go to offset if not starting at initial seed
-        for(int i = 0; i < spaceStart; i++) {
-            seedCopy.rand();
-        }
-        IntStream.range(0, spaceEnd - spaceStart).mapToObj(i -> {
-            seedCopy.rand();
-            return new RNG(seedCopy);
-        }).collect(Collectors.toList()).stream().parallel().forEach(seed -> {
-            if(!cancel) {
-                /*
-                Quoted from GenericMadScientist in the FM discord:
-
-                ORDER OF EVENTS:
-                Shuffle player deck, generate AI deck, shuffle AI deck.
-                */
-                Deck testDeck = new Deck(startingDeck);
-                testDeck.shuffle(new RNG(seed));
-                if(testDeck.startsWith(drawnCards)) {
-                    validSeeds.add(new RNG(seed));
-                    if(hitCallback != null)
-                        hitCallback.accept(new RNG(seed));
+        Set<RNG> validSeeds = new HashSet<>();
+        searchByInitialSeed().values().forEach(validSeeds::addAll);
+        return validSeeds;
+    }
+    
+    /**
+     * Performs the search from every initial seed given to the builder in a single
+     * parallel job. The search space is applied relative to each initial seed, and the
+     * work for all of them is pooled onto the same worker threads, so searching several
+     * initial seeds costs about as much as one search over the combined space.
+     * @return the seeds that produce the drawn cards, keyed by the
+     * {@linkplain RNG#getSeed() seed value} of the initial seed they were found from,
+     * in the order the initial seeds were given
+     */
+    public Map<Integer,Set<RNG>> searchByInitialSeed() {
+        Evaluation evaluation = new Evaluation();
+        getBlocks().parallelStream().forEach(block -> {
+            if(!cancel)
+                evaluation.run(block);
+        });
+        return evaluation.validSeeds;
+    }
+    
+    /**
+     * Searches for at most the given amount of wall-clock time and returns what has been found so
+     * far. The search space is explored in order of likelihood: outward from the
+     * {@linkplain Builder#withExpectedDelta(int) expected delta}, which defaults to the start of
+     * the search space, and for each distance in the order the initial seeds were given.
+     * <p>
+     * Calling this method again continues the search where the previous call stopped, so an
+     * interactive tool can show early results and keep refining them. The returned progress
+     * reports exactly which delta ranges have been searched, so a seed that was not found in them
+     * is proven not to be there. The budget is checked between blocks of a few thousand seeds, so
+     * a call may overrun it by about the time one block takes.
+     * @param budget the maximum time to search for
+     * @param unit the unit of {@code budget}
+     * @return the cumulative progress of the search
+     */
+    public Progress searchFor(long budget, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(budget);
+        if(anytime == null)
+            anytime = new Anytime();
+        Evaluation evaluation = anytime.evaluation;
+        Deque<Block> pending = anytime.pending;
+        int waveSize = 4 * Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        while(!cancel && !pending.isEmpty() && System.nanoTime() - deadline < 0) {
+            List<Block> wave = new ArrayList<>(waveSize);
+            while(wave.size() < waveSize && !pending.isEmpty()) {
+                wave.add(pending.pollFirst());
+            }
+            boolean[] searched = new boolean[wave.size()];
+            IntStream.range(0, wave.size()).parallel().forEach(i -> {
+                if(!cancel && System.nanoTime() - deadline < 0) {
+                    evaluation.run(wave.get(i));
+                    searched[i] = true;
                 }
-                if(iterCallback != null)
-                    iterCallback.run();
+            });
+            //put back what the deadline cut off, keeping the order of likelihood
+            for(int i = wave.size() - 1; i >= 0; i--) {
+                if(searched[i])
+                    anytime.cover(wave.get(i));
+                else
+                    pending.addFirst(wave.get(i));
             }
-        });
-        return validSeeds;
+        }
+        return anytime.toProgress();
+    }
+    
+    int getExpectedDelta() {
+        return expectedDelta;
+    }
+    
+    /**
+     * Splits the search space of every initial seed into blocks, ordered by likelihood.
+     */
+    private List<Block> getBlocks() {
+        List<Block> blocks = new ArrayList<>();
+        for(long start = spaceStart; start < spaceEnd; start += BLOCK_SIZE) {
+            for(int origin = 0; origin < initialSeeds.size(); origin++) {
+                blocks.add(new Block(origin, (int) start, (int) Math.min(start + BLOCK_SIZE, spaceEnd)));
+            }
+        }
+        //stable sort, so blocks at the same distance stay in the order of the initial seeds
+        blocks.sort(Comparator.comparingLong(b -> b.distanceTo(expectedDelta)));
+        return blocks;
     }
     
     /**
@@ -159,6 +503,7 @@ public class SeedSearch {
     public static class Builder {
         private final SeedSearch search;
         private boolean built = false;
+        private boolean expectedDeltaSet = false;
         
         /**
          * Creates a new builder for a seed search.
@@ -206,6 +551,21 @@ public class SeedSearch {
             return this;
         }
         
+        /**
+         * Sets the delta the seed is most likely to be near, such as an estimate from the time
+         * the console has been on. {@link SeedSearch#searchFor(long, TimeUnit)} searches outward
+         * from it, so that a short time budget covers the most likely deltas first. The default is
+         * the start of the search space.
+         * @param delta the most likely delta
+         * @return this builder
+         */
+        public Builder withExpectedDelta(int delta) {
+            check();
+            search.expectedDelta = delta;
+            expectedDeltaSet = true;
+            return this;
+        }
+        
         /**
          * Sets a callback to be run after each iteration of the search. This can be used to provide
          * feedback to the user or to cancel the search.
@@ -238,7 +598,39 @@ public class SeedSearch {
          */
         public Builder withInitialSeed(RNG initialSeed) {
             check();
-            search.initialSeed = new RNG(initialSeed);
+            search.initialSeeds = Collections.singletonList(new RNG(initialSeed));
+            return this;
+        }
+        
+        /**
+         * Sets several initial seeds to search from at once, such as alternative boot
+         * values or the starting states of different emulators. The search space is
+         * explored from each of them, and {@link SeedSearch#searchByInitialSeed()} reports
+         * which initial seed each hit came from. Initial seeds with the same seed value as
+         * an earlier one are ignored.
+         * @param initialSeeds the initial seeds to use for the search
+         * @return this builder
+         * @throws IllegalArgumentException if {@code initialSeeds} is empty
+         */
+        public Builder withInitialSeeds(Collection<RNG> initialSeeds) {
+            check();
+            if(initialSeeds.isEmpty())
+                throw new IllegalArgumentException("At least one initial seed is required");
+            Map<Integer,RNG> distinct = new LinkedHashMap<>();
+            initialSeeds.forEach(s -> distinct.putIfAbsent(s.getSeed(), new RNG(s)));
+            search.initialSeeds = new ArrayList<>(distinct.values());
+            return this;
+        }
+        
+        /**
+         * Sets the backend that evaluates seeds. By default, the available backends are timed on
+         * the first search of the JVM and the fastest one is used; see {@link SeedSearchBackend}.
+         * @param backend the backend to use, or null to pick one automatically
+         * @return this builder
+         */
+        public Builder withBackend(SeedSearchBackend backend) {
+            check();
+            search.backend = backend;
             return this;
         }
         
@@ -248,6 +640,8 @@ public class SeedSearch {
          */
         public SeedSearch build() {
             built = true;
+            if(!expectedDeltaSet)
+                search.expectedDelta = search.spaceStart;
             return search;
         }
         
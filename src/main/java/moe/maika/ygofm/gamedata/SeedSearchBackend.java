@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A strategy for evaluating seeds in a {@link SeedSearch}. Every backend produces exactly the
+ * same results; they differ only in how fast they are on a given machine, search and prefix
+ * length. By default, {@link SeedSearch} times the {@linkplain #getAvailableBackends() available
+ * backends} on the first search of a JVM and uses the fastest one. Use
+ * {@link SeedSearch.Builder#withBackend(SeedSearchBackend)} to pick one explicitly.
+ * <p>
+ * The built-in backends are:
+ * <ul>
+ * <li>{@code scalar}: shuffles a copy of the deck for every seed, exactly like the game.</li>
+ * <li>{@code table}: like {@code scalar}, but reads {@code rand() % 40} from a lookup table.</li>
+ * <li>{@code incremental}: shares the {@code rand()} stream between consecutive seeds, which
+ * overlap in all but one value, and traces only the drawn positions backwards through the swaps.</li>
+ * <li>{@code vector}: evaluates one seed per SIMD lane with the Vector API. Only available on
+ * JDK 17+ with {@code --add-modules jdk.incubator.vector}.</li>
+ * </ul>
+ * Implementations must be thread-safe; the evaluators they create need not be.
+ * @author sg4e
+ */
+public interface SeedSearchBackend {
+    
+    /**
+     * Returns the name of this backend, used in logs and by {@link #forName(String)}.
+     * @return the name of this backend
+     */
+    String getName();
+    
+    /**
+     * Creates an evaluator for the given search. Each worker thread of a search gets its own.
+     * @param startingDeck the card ids of the player's deck, in the order it has before the
+     * shuffle (i.e., after the deck sort)
+     * @param drawnCards the card ids the shuffled deck must start with
+     * @return a new evaluator
+     */
+    Evaluator newEvaluator(int[] startingDeck, int[] drawnCards);
+    
+    /**
+     * Creates a scanner that reports the top of the shuffled deck for runs of seeds, for searches
+     * that test the shuffle with an arbitrary condition rather than a known prefix. Each worker
+     * thread gets its own. The default implementation shuffles a copy of the deck for every seed,
+     * like the {@code scalar} backend.
+     * @param startingDeck the card ids of the player's deck, in the order it has before the
+     * shuffle (i.e., after the deck sort)
+     * @return a new scanner
+     */
+    default Scanner newScanner(int[] startingDeck) {
+        return new ShuffleEvaluator(startingDeck, new int[0]);
+    }
+    
+    /**
+     * Evaluates runs of consecutive seeds for one search.
+     */
+    interface Evaluator {
+        
+        /**
+         * Evaluates the {@code count} seeds that follow {@code seed}. The index passed to
+         * {@code hits} is zero-based, so index {@code i} refers to the seed reached after
+         * {@code i + 1} {@code rand()} calls from {@code seed}. Hits must be reported in
+         * ascending order.
+         * @param seed the seed before the first seed to evaluate
+         * @param count the number of seeds to evaluate
+         * @param hits receives the index of each seed whose shuffle starts with the drawn cards
+         */
+        void evaluate(int seed, int count, IntConsumer hits);
+    }
+    
+    /**
+     * Reports the top of the shuffled deck for runs of consecutive seeds.
+     */
+    interface Scanner {
+        
+        /**
+         * Shuffles the deck for each of the {@code count} seeds that follow {@code seed} and
+         * passes the top {@code length} card ids to {@code prefixes}, with seed indices as in
+         * {@link Evaluator#evaluate(int, int, IntConsumer)}, in ascending order. The array passed
+         * to {@code prefixes} is reused, and only its first {@code length} elements are defined.
+         * @param seed the seed before the first seed to shuffle with
+         * @param count the number of seeds to shuffle with
+         * @param length how many cards from the top of the deck to report, from 0 to 40
+         * @param prefixes receives the index of each seed and the top of its shuffled deck
+         */
+        void scan(int seed, int count, int length, PrefixConsumer prefixes);
+    }
+    
+    /**
+     * Receives the top of a shuffled deck from a {@link Scanner}.
+     */
+    @FunctionalInterface
+    interface PrefixConsumer {
+        
+        /**
+         * Receives the top of the deck shuffled with one seed.
+         * @param index the index of the seed
+         * @param cardIds the card ids from the top of the deck down; reused between calls
+         */
+        void accept(int index, int[] cardIds);
+    }
+    
+    /**
+     * Returns the built-in backends that can run on this JVM.
+     * @return the available backends
+     */
+    static List<SeedSearchBackend> getAvailableBackends() {
+        return SeedSearchBackends.getAvailable();
+    }
+    
+    /**
+     * Returns the available built-in backend with the given name.
+     * @param name the name of a backend, such as {@code "scalar"}
+     * @return the backend
+     * @throws IllegalArgumentException if there is no such backend or it cannot run on this JVM
+     */
+    static SeedSearchBackend forName(String name) {
+        return getAvailableBackends().stream().filter(b -> b.getName().equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No available seed search backend named " + name));
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The built-in {@link SeedSearchBackend}s and the calibration that picks one of them.
+ * @author sg4e
+ */
+final class SeedSearchBackends {
+    
+    private static final Logger LOGGER = Logger.getLogger(SeedSearch.class.getName());
+    
+    static final SeedSearchBackend SCALAR = new Named("scalar") {
+        @Override
+        public SeedSearchBackend.Evaluator newEvaluator(int[] startingDeck, int[] drawnCards) {
+            return new ShuffleEvaluator(startingDeck, drawnCards);
+        }
+    };
+    
+    static final SeedSearchBackend TABLE = new Named("table") {
+        @Override
+        public SeedSearchBackend.Evaluator newEvaluator(int[] startingDeck, int[] drawnCards) {
+            return new TableEvaluator(startingDeck, drawnCards);
+        }
+
+        @Override
+        public SeedSearchBackend.Scanner newScanner(int[] startingDeck) {
+            return new TableEvaluator(startingDeck, new int[0]);
+        }
+    };
+    
+    static final SeedSearchBackend INCREMENTAL = new Named("incremental") {
+        @Override
+        public SeedSearchBackend.Evaluator newEvaluator(int[] startingDeck, int[] drawnCards) {
+            return new IncrementalEvaluator(startingDeck, drawnCards);
+        }
+
+        @Override
+        public SeedSearchBackend.Scanner newScanner(int[] startingDeck) {
+            return new IncrementalEvaluator(startingDeck, new int[0]);
+        }
+    };
+    
+    /**
+     * The Vector API backend, or null if it cannot run on this JVM.
+     */
+    static final SeedSearchBackend VECTOR = findVectorBackend();
+    
+    private static final String VECTOR_EVALUATOR = "moe.maika.ygofm.gamedata.VectorShuffleEvaluator";
+    /**
+     * How many seeds each backend evaluates per calibration round.
+     */
+    private static final int CALIBRATION_SEEDS = 1 << 13;
+    private static final int CALIBRATION_ROUNDS = 6;
+    /**
+     * Calibrated backends by the number of drawn cards, which is what changes the relative cost
+     * of the backends the most.
+     */
+    private static final Map<Integer,SeedSearchBackend> CALIBRATED = new ConcurrentHashMap<>();
+    /**
+     * Calibrated backends for scanning, by the number of cards reported.
+     */
+    private static final Map<Integer,SeedSearchBackend> CALIBRATED_SCANNERS = new ConcurrentHashMap<>();
+    
+    private SeedSearchBackends() {
+    }
+    
+    static List<SeedSearchBackend> getAvailable() {
+        List<SeedSearchBackend> backends = new ArrayList<>(4);
+        backends.add(SCALAR);
+        backends.add(TABLE);
+        backends.add(INCREMENTAL);
+        if(VECTOR != null)
+            backends.add(VECTOR);
+        return Collections.unmodifiableList(backends);
+    }
+    
+    /**
+     * Returns the fastest backend for a search like the given one, timing every available
+     * backend on a sample of the search the first time a prefix length is seen.
+     */
+    static SeedSearchBackend calibrated(int[] startingDeck, int[] drawnCards) {
+        return CALIBRATED.computeIfAbsent(drawnCards.length, length -> calibrate(startingDeck, drawnCards));
+    }
+    
+    /**
+     * Returns the fastest backend for scanning the given number of cards from the top of the
+     * deck, calibrated like {@link #calibrated(int[], int[])}.
+     */
+    static SeedSearchBackend calibratedScanner(int[] startingDeck, int length) {
+        return CALIBRATED_SCANNERS.computeIfAbsent(length, l -> {
+            SeedSearchBackend.PrefixConsumer ignored = (i, prefix) -> {};
+            return fastest(String.format("Seed scan backend for %d cards", length),
+                    backend -> backend.newScanner(startingDeck).scan(new RNG().getSeed(), CALIBRATION_SEEDS, length, ignored));
+        });
+    }
+    
+    private static SeedSearchBackend calibrate(int[] startingDeck, int[] drawnCards) {
+        IntConsumer ignored = i -> {};
+        return fastest(String.format("Seed search backend for %d drawn cards", drawnCards.length),
+                backend -> backend.newEvaluator(startingDeck, drawnCards).evaluate(new RNG().getSeed(), CALIBRATION_SEEDS, ignored));
+    }
+    
+    /**
+     * Times a run of {@link #CALIBRATION_SEEDS} seeds on every available backend and returns the fastest.
+     */
+    private static SeedSearchBackend fastest(String purpose, Consumer<SeedSearchBackend> run) {
+        List<SeedSearchBackend> backends = getAvailable();
+        long[] best = new long[backends.size()];
+        Arrays.fill(best, Long.MAX_VALUE);
+        //interleave the rounds so that JIT compilation and frequency scaling affect every backend alike
+        for(int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            for(int b = 0; b < backends.size(); b++) {
+                long start = System.nanoTime();
+                run.accept(backends.get(b));
+                best[b] = Math.min(best[b], System.nanoTime() - start);
+            }
+        }
+        int fastest = 0;
+        for(int b = 1; b < backends.size(); b++) {
+            if(best[b] < best[fastest])
+                fastest = b;
+        }
+        String timings = IntStream.range(0, backends.size())
+                .mapToObj(b -> String.format("%s %d ns/seed", backends.get(b).getName(), best[b] / CALIBRATION_SEEDS))
+                .collect(Collectors.joining(", "));
+        LOGGER.info(String.format("%s: %s, the fastest in calibration (%s)", purpose, backends.get(fastest).getName(), timings));
+        return backends.get(fastest);
+    }
+    
+    private static SeedSearchBackend findVectorBackend() {
+        try {
+            Class<? extends ShuffleEvaluator> type = Class.forName(VECTOR_EVALUATOR).asSubclass(ShuffleEvaluator.class);
+            //touching the vector species fails here, rather than mid-search, if the incubator module is missing
+            if(!(Boolean) type.getDeclaredMethod("isSupported").invoke(null))
+                return null;
+            Constructor<? extends ShuffleEvaluator> constructor = type.getDeclaredConstructor(int[].class, int[].class);
+            return new Named("vector") {
+                @Override
+                public SeedSearchBackend.Evaluator newEvaluator(int[] startingDeck, int[] drawnCards) {
+                    try {
+                        return constructor.newInstance(startingDeck, drawnCards);
+                    }
+                    catch(ReflectiveOperationException ex) {
+                        throw new IllegalStateException("Vector API evaluator failed to initialize", ex);
+                    }
+                }
+            };
+        }
+        catch(ReflectiveOperationException | LinkageError | ClassCastException ex) {
+            //running on JDK 8-16, from a non-multi-release classpath, or without --add-modules jdk.incubator.vector
+            return null;
+        }
+    }
+    
+    private abstract static class Named implements SeedSearchBackend {
+        private final String name;
+
+        private Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    
+    /**
+     * The scalar evaluator with {@code rand() % 40} replaced by a table lookup.
+     */
+    private static class TableEvaluator extends ShuffleEvaluator {
+        
+        private static final byte[] MOD_40 = new byte[0x8000];
+        static {
+            for(int i = 0; i < MOD_40.length; i++) {
+                MOD_40[i] = (byte) (i % 40);
+            }
+        }
+        
+        private TableEvaluator(int[] startingDeck, int[] drawnCards) {
+            super(startingDeck, drawnCards);
+        }
+        
+        @Override
+        void shuffle(int[] deck, int seed) {
+            for(int i = 0; i < 160; i++) {
+                seed = RNG.next(seed);
+                int x = MOD_40[RNG.value(seed)];
+                seed = RNG.next(seed);
+                int y = MOD_40[RNG.value(seed)];
+                int holder = deck[x];
+                deck[x] = deck[y];
+                deck[y] = holder;
+            }
+        }
+    }
+    
+    /**
+     * Consecutive seeds share all but one of their 320 {@code rand()} values, so this evaluator
+     * computes the swap indices of a whole run of seeds once and, for each seed, only traces the
+     * drawn positions backwards through its 160 swaps, stopping at the first mismatch.
+     */
+    private static class IncrementalEvaluator implements SeedSearchBackend.Evaluator, SeedSearchBackend.Scanner {
+        
+        private final int[] startingDeck;
+        private final int[] drawnCards;
+        private int[] swaps = new int[0];
+        
+        private IncrementalEvaluator(int[] startingDeck, int[] drawnCards) {
+            this.startingDeck = startingDeck;
+            this.drawnCards = drawnCards;
+        }
+        
+        @Override
+        public void evaluate(int seed, int count, IntConsumer hits) {
+            fillSwaps(seed, count);
+            for(int i = 0; i < count; i++) {
+                if(matches(i + 1))
+                    hits.accept(i);
+            }
+        }
+        
+        @Override
+        public void scan(int seed, int count, int length, SeedSearchBackend.PrefixConsumer prefixes) {
+            fillSwaps(seed, count);
+            int[] prefix = new int[Deck.DECK_SIZE];
+            for(int i = 0; i < count; i++) {
+                for(int p = 0; p < length; p++) {
+                    prefix[p] = startingDeck[trace(p, i + 1)];
+                }
+                prefixes.accept(i, prefix);
+            }
+        }
+        
+        /**
+         * Fills the swap indices of a run: swaps[j] is rand() % 40 for the (j + 1)th call after
+         * seed, and seed i uses swaps[i + 1 .. i + 320].
+         */
+        private void fillSwaps(int seed, int count) {
+            int length = count + 320;
+            if(swaps.length < length)
+                swaps = new int[length];
+            for(int j = 0; j < length; j++) {
+                seed = RNG.next(seed);
+                swaps[j] = RNG.value(seed) % 40;
+            }
+        }
+        
+        /**
+         * Returns the position in the starting deck that the shuffle starting at swaps[first] moves to the given position.
+         */
+        private int trace(int position, int first) {
+            for(int k = first + 318; k >= first; k -= 2) {
+                int x = swaps[k];
+                int y = swaps[k + 1];
+                if(position == x)
+                    position = y;
+                else if(position == y)
+                    position = x;
+            }
+            return position;
+        }
+        
+        private boolean matches(int first) {
+            for(int p = 0; p < drawnCards.length; p++) {
+                if(startingDeck[trace(p, first)] != drawnCards[p])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Distributes a {@link SeedSearch} over several worker processes, possibly on several
+ * machines. The coordinator splits the search space of every initial seed into shards,
+ * hands them out over a plain TCP connection to {@link SeedSearchWorker}s as they ask for
+ * work, and merges the seeds they report back. A shard that was handed to a worker whose
+ * connection drops, or that stays silent for longer than the shard timeout, is put back
+ * at the front of the queue for the next worker to pick up, so losing workers only costs
+ * the time spent on their unfinished shards.
+ * <p>
+ * Typical use:
+ * <pre>{@code
+ * SeedSearch search = new SeedSearch.Builder(deck, drawnCards).withSpace(2_000_000_000).build();
+ * try(SeedSearchCoordinator coordinator = new SeedSearchCoordinator(search).start(0)) {
+ *     // launch workers with: java -cp ... moe.maika.ygofm.gamedata.SeedSearchWorker localhost <port>
+ *     Map<Integer,Set<RNG>> seeds = coordinator.await();
+ * }
+ * }</pre>
+ * Only the in-game deck sorts from {@link Deck#getAllSorts()} can be sent to workers. The
+ * search's hit callback is run on the coordinator as results arrive; the per-iteration callback
+ * is not supported.
+ * <p>
+ * The protocol is line-based text. After the coordinator greets a worker with the protocol
+ * version and the job description, the worker repeatedly sends {@code NEXT} and receives either
+ * {@code SHARD <id> <initial seed> <initial delta> <start> <end>} or {@code DONE}, answering each
+ * shard with {@code RESULT <id> [<seed>:<delta> ...]}.
+ * <p>
+ * The protocol has no authentication, so any peer that can connect can report seeds. By default
+ * the coordinator only listens on the loopback interface; use
+ * {@link #start(InetAddress, int)} to accept workers from other machines on a trusted network.
+ * <p>
+ * This class is thread-safe.
+ * @author sg4e
+ */
+public class SeedSearchCoordinator implements Closeable {
+    
+    /**
+     * The default number of deltas in a shard.
+     */
+    public static final int DEFAULT_SHARD_SIZE = 1 << 22;
+    static final String PROTOCOL = "YGOFM-SEEDSEARCH/1";
+    
+    private final String job;
+    private final List<RNG> initialSeeds;
+    private final List<Shard> shards;
+    private final boolean[] completed;
+    private int completedCount = 0;
+    private final BlockingDeque<Shard> pending = new LinkedBlockingDeque<>();
+    private final Map<Integer,Set<RNG>> results = new LinkedHashMap<>();
+    private final CountDownLatch finished;
+    private final Consumer<RNG> hitCallback;
+    private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile int shardTimeoutMillis = 0;
+    private volatile boolean closed = false;
+    private ServerSocket server;
+    
+    /**
+     * Creates a coordinator for the given search using the default shard size.
+     * @param search the search to distribute
+     * @throws IllegalArgumentException if the search does not use an in-game deck sort
+     */
+    public SeedSearchCoordinator(SeedSearch search) {
+        this(search, DEFAULT_SHARD_SIZE);
+    }
+    
+    /**
+     * Creates a coordinator for the given search.
+     * @param search the search to distribute
+     * @param shardSize the number of deltas handed to a worker at a time
+     * @throws IllegalArgumentException if the search does not use an in-game deck sort
+     * or the shard size is not positive
+     */
+    public SeedSearchCoordinator(SeedSearch search, int shardSize) {
+        if(shardSize <= 0)
+            throw new IllegalArgumentException("Shard size must be positive: " + shardSize);
+        int sortIndex = Deck.getAllSorts().indexOf(search.getSort());
+        if(sortIndex < 0)
+            throw new IllegalArgumentException("Only the in-game deck sorts can be distributed: " + search.getSort());
+        job = String.format("JOB %d %s %s", sortIndex, toIds(search.getDeck().toList()), toIds(search.getDrawnCards()));
+        initialSeeds = new ArrayList<>(search.getInitialSeeds());
+        hitCallback = search.getHitCallback();
+        shards = new ArrayList<>();
+        for(int i = 0; i < initialSeeds.size(); i++) {
+            results.put(initialSeeds.get(i).getSeed(), new HashSet<>());
+            for(long start = search.getSpaceStart(); start < search.getSpaceEnd(); start += shardSize) {
+                shards.add(new Shard(shards.size(), i, (int) start, (int) Math.min(start + shardSize, search.getSpaceEnd())));
+            }
+        }
+        completed = new boolean[shards.size()];
+        pending.addAll(shards);
+        finished = new CountDownLatch(shards.isEmpty() ? 0 : 1);
+    }
+    
+    /**
+     * Sets how long a worker may take to finish a shard before the coordinator gives up on it
+     * and reassigns the shard. The default of 0 waits forever, so only workers whose
+     * connection drops lose their shards.
+     * @param timeout the timeout, or 0 to wait forever
+     * @param unit the unit of {@code timeout}
+     * @return this coordinator
+     */
+    public SeedSearchCoordinator withShardTimeout(long timeout, TimeUnit unit) {
+        shardTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+        return this;
+    }
+    
+    /**
+     * Starts listening for workers on the loopback interface, so only workers on this machine
+     * can connect.
+     * @param port the port to listen on, or 0 to pick a free port
+     * @return this coordinator
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalStateException if the coordinator was already started
+     */
+    public SeedSearchCoordinator start(int port) throws IOException {
+        return start(InetAddress.getLoopbackAddress(), port);
+    }
+    
+    /**
+     * Starts listening for workers on the given interface. Anyone who can reach the address can
+     * take shards and report seeds, so only bind to interfaces of a trusted network.
+     * @param address the local address to bind to, or null for all local interfaces
+     * @param port the port to listen on, or 0 to pick a free port
+     * @return this coordinator
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalStateException if the coordinator was already started
+     */
+    public synchronized SeedSearchCoordinator start(InetAddress address, int port) throws IOException {
+        if(server != null)
+            throw new IllegalStateException("Coordinator already started");
+        server = new ServerSocket(port, 50, address);
+        Thread acceptor = new Thread(this::acceptWorkers, "SeedSearchCoordinator-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+    
+    /**
+     * Returns the port the coordinator is listening on.
+     * @return the port workers should connect to
+     * @throws IllegalStateException if the coordinator has not been started
+     */
+    public synchronized int getPort() {
+        if(server == null)
+            throw new IllegalStateException("Coordinator not started");
+        return server.getLocalPort();
+    }
+    
+    /**
+     * Waits until every shard has been searched.
+     * @return the seeds that produce the drawn cards, keyed by the seed value of the
+     * initial seed they were found from, as in {@link SeedSearch#searchByInitialSeed()}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Map<Integer,Set<RNG>> await() throws InterruptedException {
+        finished.await();
+        return getResults();
+    }
+    
+    /**
+     * Waits until every shard has been searched or the timeout elapses.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of {@code timeout}
+     * @return the seeds found, keyed as in {@link #await()}, or null if the search did not
+     * finish in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Map<Integer,Set<RNG>> await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit) ? getResults() : null;
+    }
+    
+    /**
+     * Returns whether every shard has been searched.
+     * @return true if the search is complete
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+    
+    /**
+     * Returns the total number of shards in the search.
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    /**
+     * Returns how many shards have been searched so far.
+     * @return the number of completed shards
+     */
+    public synchronized int getCompletedShardCount() {
+        return completedCount;
+    }
+    
+    /**
+     * Stops accepting workers and disconnects the ones still connected. Shards that were
+     * not completed are abandoned.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if(server != null)
+            server.close();
+        for(Socket socket : connections) {
+            socket.close();
+        }
+    }
+    
+    private synchronized Map<Integer,Set<RNG>> getResults() {
+        Map<Integer,Set<RNG>> copy = new LinkedHashMap<>();
+        results.forEach((k, v) -> copy.put(k, new HashSet<>(v)));
+        return copy;
+    }
+    
+    private void acceptWorkers() {
+        while(!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread worker = new Thread(() -> serve(socket), "SeedSearchCoordinator-worker-" + socket.getRemoteSocketAddress());
+                worker.setDaemon(true);
+                worker.start();
+            }
+            catch(IOException ex) {
+                //thrown when the server socket is closed
+                if(closed)
+                    return;
+            }
+        }
+    }
+    
+    private void serve(Socket socket) {
+        Shard current = null;
+        connections.add(socket);
+        try(Socket s = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setSoTimeout(shardTimeoutMillis);
+            send(out, PROTOCOL);
+            send(out, job);
+            String line;
+            while(!closed && (line = in.readLine()) != null) {
+                if(line.equals("NEXT")) {
+                    //a worker asking for more work without reporting its shard has abandoned it
+                    if(current != null)
+                        reassign(current);
+                    current = nextShard();
+                    if(current == null) {
+                        send(out, "DONE");
+                        return;
+                    }
+                    RNG origin = initialSeeds.get(current.origin);
+                    send(out, String.format("SHARD %d %d %d %d %d", current.id, origin.getSeed(), origin.getDelta(), current.start, current.end));
+                }
+                else if(line.startsWith("RESULT ")) {
+                    String[] parts = line.split(" ");
+                    if(current == null || Integer.parseInt(parts[1]) != current.id)
+                        throw new IOException("Result for a shard that was not assigned: " + line);
+                    List<RNG> hits = new ArrayList<>(parts.length - 2);
+                    for(int i = 2; i < parts.length; i++) {
+                        String[] hit = parts[i].split(":");
+                        hits.add(new RNG(Integer.parseInt(hit[0]), Integer.parseInt(hit[1])));
+                    }
+                    complete(current, hits);
+                    current = null;
+                }
+                else {
+                    throw new IOException("Unexpected message: " + line);
+                }
+            }
+        }
+        catch(IOException | RuntimeException ex) {
+            //worker lost or misbehaving; its shard is reassigned below
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            connections.remove(socket);
+            if(current != null)
+                reassign(current);
+        }
+    }
+    
+    private Shard nextShard() throws InterruptedException {
+        while(!isFinished() && !closed) {
+            Shard shard = pending.poll(100, TimeUnit.MILLISECONDS);
+            if(shard != null && !isCompleted(shard))
+                return shard;
+        }
+        return null;
+    }
+    
+    private synchronized boolean isCompleted(Shard shard) {
+        return completed[shard.id];
+    }
+    
+    private synchronized void reassign(Shard shard) {
+        if(!completed[shard.id])
+            pending.addFirst(shard);
+    }
+    
+    private void complete(Shard shard, List<RNG> hits) {
+        synchronized(this) {
+            if(completed[shard.id])
+                return;
+            completed[shard.id] = true;
+            completedCount++;
+            results.get(initialSeeds.get(shard.origin).getSeed()).addAll(hits);
+            if(completedCount == shards.size())
+                finished.countDown();
+        }
+        if(hitCallback != null)
+            hits.forEach(hit -> hitCallback.accept(new RNG(hit)));
+    }
+    
+    static void send(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+    
+    private static String toIds(List<Card> cards) {
+        return cards.stream().map(c -> Integer.toString(c.getId())).collect(Collectors.joining(","));
+    }
+    
+    private static class Shard {
+        private final int id, origin, start, end;
+
+        private Shard(int id, int origin, int start, int end) {
+            this.id = id;
+            this.origin = origin;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A worker process for a distributed seed search. Workers connect to a
+ * {@link SeedSearchCoordinator}, receive the search parameters, and search the shards of
+ * the search space they are handed until the coordinator has no work left. Each shard is
+ * searched in parallel on all of the worker's cores, starting directly at the shard's first
+ * delta.
+ * <p>
+ * Run a worker from the command line with:
+ * <pre>
+ * java -cp ygofm-gamedata.jar moe.maika.ygofm.gamedata.SeedSearchWorker &lt;host&gt; &lt;port&gt;
+ * </pre>
+ * @author sg4e
+ */
+public class SeedSearchWorker {
+    
+    private SeedSearchWorker() {
+    }
+    
+    /**
+     * Runs a worker until the coordinator reports the search is done.
+     * @param args the coordinator's host and port
+     * @throws IOException if the connection to the coordinator fails
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: SeedSearchWorker <host> <port>");
+            System.exit(2);
+        }
+        run(args[0], Integer.parseInt(args[1]));
+    }
+    
+    /**
+     * Connects to a coordinator and searches shards until the coordinator reports the
+     * search is done.
+     * @param host the coordinator's host
+     * @param port the coordinator's port
+     * @return the number of shards this worker searched
+     * @throws IOException if the connection to the coordinator fails or the coordinator
+     * does not speak the same protocol
+     */
+    public static int run(String host, int port) throws IOException {
+        FMDB db = FMDB.getInstance();
+        try(Socket socket = new Socket(host, port);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String greeting = in.readLine();
+            if(!SeedSearchCoordinator.PROTOCOL.equals(greeting))
+                throw new IOException("Unsupported coordinator protocol: " + greeting);
+            String[] job = readLine(in).split(" ", -1);
+            if(job.length != 4 || !job[0].equals("JOB"))
+                throw new IOException("Malformed job: " + String.join(" ", job));
+            Deck deck = new Deck(toCards(db, job[2]));
+            List<Card> drawnCards = toCards(db, job[3]);
+            int sortIndex = Integer.parseInt(job[1]);
+            int shardsSearched = 0;
+            while(true) {
+                SeedSearchCoordinator.send(out, "NEXT");
+                String[] message = readLine(in).split(" ");
+                if(message[0].equals("DONE"))
+                    return shardsSearched;
+                if(message.length != 6 || !message[0].equals("SHARD"))
+                    throw new IOException("Malformed shard: " + String.join(" ", message));
+                Set<RNG> hits = new SeedSearch.Builder(deck, drawnCards)
+                        .withSort(Deck.getAllSorts().get(sortIndex))
+                        .withInitialSeed(new RNG(Integer.parseInt(message[2]), Integer.parseInt(message[3])))
+                        .withSpace(Integer.parseInt(message[4]), Integer.parseInt(message[5]))
+                        .build()
+                        .search();
+                StringBuilder result = new StringBuilder("RESULT ").append(message[1]);
+                for(RNG hit : hits) {
+                    result.append(' ').append(hit.getSeed()).append(':').append(hit.getDelta());
+                }
+                SeedSearchCoordinator.send(out, result.toString());
+                shardsSearched++;
+            }
+        }
+    }
+    
+    private static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if(line == null)
+            throw new IOException("Coordinator closed the connection");
+        return line;
+    }
+    
+    private static List<Card> toCards(FMDB db, String ids) {
+        return Arrays.stream(ids.split(",")).filter(s -> !s.isEmpty()).map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+    }
+}
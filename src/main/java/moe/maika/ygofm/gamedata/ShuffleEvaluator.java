@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The scalar seed-search evaluator: for every seed, copy the pre-sorted deck, shuffle it
+ * exactly like the game does and compare the top of the deck with the drawn cards. It is the
+ * reference that the other {@link SeedSearchBackend}s must agree with.
+ * <p>
+ * Each evaluator holds a scratch deck, so each worker thread needs its own.
+ * @author sg4e
+ */
+class ShuffleEvaluator implements SeedSearchBackend.Evaluator, SeedSearchBackend.Scanner {
+    
+    final int[] startingDeck;
+    final int[] drawnCards;
+    private final int[] scratch;
+    
+    ShuffleEvaluator(int[] startingDeck, int[] drawnCards) {
+        this.startingDeck = startingDeck;
+        this.drawnCards = drawnCards;
+        scratch = new int[Deck.DECK_SIZE];
+    }
+    
+    @Override
+    public void evaluate(int seed, int count, IntConsumer hits) {
+        for(int i = 0; i < count; i++) {
+            seed = RNG.next(seed);
+            System.arraycopy(startingDeck, 0, scratch, 0, Deck.DECK_SIZE);
+            shuffle(scratch, seed);
+            if(startsWith(scratch))
+                hits.accept(i);
+        }
+    }
+    
+    @Override
+    public void scan(int seed, int count, int length, SeedSearchBackend.PrefixConsumer prefixes) {
+        for(int i = 0; i < count; i++) {
+            seed = RNG.next(seed);
+            System.arraycopy(startingDeck, 0, scratch, 0, Deck.DECK_SIZE);
+            shuffle(scratch, seed);
+            prefixes.accept(i, scratch);
+        }
+    }
+    
+    /**
+     * Shuffles the card ids in place; see {@link Deck#shuffle(RNG)}.
+     */
+    void shuffle(int[] deck, int seed) {
+        for(int i = 0; i < 160; i++) {
+            seed = RNG.next(seed);
+            int x = RNG.value(seed) % 40;
+            seed = RNG.next(seed);
+            int y = RNG.value(seed) % 40;
+            int holder = deck[x];
+            deck[x] = deck[y];
+            deck[y] = holder;
+        }
+    }
+    
+    private boolean startsWith(int[] deck) {
+        for(int i = 0; i < drawnCards.length; i++) {
+            if(deck[i] != drawnCards[i])
+                return false;
+        }
+        return true;
+    }
+}
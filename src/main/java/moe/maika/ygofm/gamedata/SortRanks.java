@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed ranks of every card under each of the deck sorts in {@link Deck#getAllSorts()},
+ * and a radix sort over them. Two cards compare equal under a sort exactly when they have the
+ * same rank, and the radix sort is stable, so sorting by rank gives the same order as a stable
+ * comparison sort with the comparator.
+ * <p>
+ * This class is thread-safe.
+ * @author sg4e
+ */
+final class SortRanks {
+    
+    private static final int RADIX_BITS = 5;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int MASK = RADIX - 1;
+    /**
+     * Ranks must fit in two radix passes.
+     */
+    private static final int MAX_RANK = RADIX * RADIX;
+    
+    private SortRanks() {
+    }
+    
+    /**
+     * Built on first use, so that the card data is loaded before the ranks are computed.
+     */
+    private static class Holder {
+        private static final Map<Comparator<?>, int[]> RANKS = new IdentityHashMap<>();
+        static {
+            List<Card> cards = new ArrayList<>(FMDB.getInstance().getAllCards());
+            int maxId = cards.stream().mapToInt(Card::getId).max().orElse(0);
+            for(Comparator<Card> sort : Deck.getAllSorts()) {
+                cards.sort(sort);
+                //ranks by card id, with -1 for ids without a card
+                int[] ranks = new int[maxId + 1];
+                Arrays.fill(ranks, -1);
+                int rank = 0;
+                for(int i = 0; i < cards.size(); i++) {
+                    if(i > 0 && sort.compare(cards.get(i - 1), cards.get(i)) != 0)
+                        rank++;
+                    ranks[cards.get(i).getId()] = rank;
+                }
+                if(rank < MAX_RANK)
+                    RANKS.put(sort, ranks);
+            }
+        }
+    }
+    
+    /**
+     * Returns the ranks of the cards under the given sort, indexed by card id, or null if the sort
+     * is not one of the game's deck sorts.
+     */
+    static int[] getRanks(Comparator<?> sort) {
+        return Holder.RANKS.get(sort);
+    }
+    
+    /**
+     * Sorts the cards in place with the given sort, using ranks when the sort has them.
+     */
+    static void sort(Card[] cards, Comparator<? super Card> sort) {
+        int[] ranks = getRanks(sort);
+        int[] keys = ranks == null ? null : new int[cards.length];
+        for(int i = 0; keys != null && i < cards.length; i++) {
+            int id = cards[i].getId();
+            keys[i] = id < ranks.length ? ranks[id] : -1;
+            if(keys[i] < 0)
+                keys = null;
+        }
+        if(keys == null) {
+            Arrays.sort(cards, sort);
+            return;
+        }
+        Card[] sorted = new Card[cards.length];
+        int[] order = order(keys);
+        for(int i = 0; i < cards.length; i++) {
+            sorted[i] = cards[order[i]];
+        }
+        System.arraycopy(sorted, 0, cards, 0, cards.length);
+    }
+    
+    /**
+     * Sorts the card ids in place with the given sort, using ranks when the sort has them.
+     */
+    static void sort(short[] ids, Comparator<? super Card> sort) {
+        int[] ranks = getRanks(sort);
+        int[] keys = ranks == null ? null : new int[ids.length];
+        for(int i = 0; keys != null && i < ids.length; i++) {
+            keys[i] = ids[i] >= 0 && ids[i] < ranks.length ? ranks[ids[i]] : -1;
+            if(keys[i] < 0)
+                keys = null;
+        }
+        if(keys == null) {
+            //fall back to comparing the cards themselves
+            FMDB db = FMDB.getInstance();
+            Card[] cards = new Card[ids.length];
+            for(int i = 0; i < ids.length; i++) {
+                cards[i] = db.getCard(ids[i]);
+            }
+            Arrays.sort(cards, sort);
+            for(int i = 0; i < ids.length; i++) {
+                ids[i] = (short) cards[i].getId();
+            }
+            return;
+        }
+        short[] sorted = new short[ids.length];
+        int[] order = order(keys);
+        for(int i = 0; i < ids.length; i++) {
+            sorted[i] = ids[order[i]];
+        }
+        System.arraycopy(sorted, 0, ids, 0, ids.length);
+    }
+    
+    /**
+     * Returns the indices of the keys in stable ascending order of key, by a two-pass LSD radix sort.
+     */
+    private static int[] order(int[] keys) {
+        int n = keys.length;
+        int[] from = new int[n];
+        int[] to = new int[n];
+        for(int i = 0; i < n; i++) {
+            from[i] = i;
+        }
+        int[] counts = new int[RADIX + 1];
+        for(int shift = 0; shift < 2 * RADIX_BITS; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < n; i++) {
+                counts[((keys[from[i]] >>> shift) & MASK) + 1]++;
+            }
+            for(int b = 0; b < RADIX; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for(int i = 0; i < n; i++) {
+                to[counts[(keys[from[i]] >>> shift) & MASK]++] = from[i];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import java.util.function.IntConsumer;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@code vector} {@link SeedSearchBackend}: evaluates one seed per vector lane using the
+ * incubating Vector API. Only JDK 17+ loads this class, from the {@code META-INF/versions/17} entry of
+ * the multi-release JAR, and only when the {@code jdk.incubator.vector} module is present.
+ * <p>
+ * For a batch of seeds, the LCG and the {@code rand() % 40} swap indices of all 160 swaps are
+ * computed lane-wise. Instead of shuffling a copy of the deck for every lane, the evaluator then
+ * traces the top card of the deck backwards through the swaps, which needs only compares and
+ * blends, and falls back to tracing the remaining drawn cards for the few lanes whose top card
+ * matches.
+ * @author sg4e
+ */
+class VectorShuffleEvaluator extends ShuffleEvaluator {
+    
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int RANDS = 320;
+    
+    private final int lanes = SPECIES.length();
+    private final int[] swaps = new int[RANDS * lanes];
+    private final int[] origins = new int[lanes];
+    private final int[] laneSeeds = new int[lanes];
+    
+    VectorShuffleEvaluator(int[] startingDeck, int[] drawnCards) {
+        super(startingDeck, drawnCards);
+    }
+    
+    static boolean isSupported() {
+        //vectors narrower than 4 ints are slower than the scalar loop
+        return SPECIES.length() >= 4;
+    }
+    
+    @Override
+    public void evaluate(int seed, int count, IntConsumer hits) {
+        if(drawnCards.length == 0) {
+            super.evaluate(seed, count, hits);
+            return;
+        }
+        //lane k starts at the seed after k + 1 calls and strides by the lane count
+        for(int k = 0; k < lanes; k++) {
+            seed = RNG.next(seed);
+            laneSeeds[k] = seed;
+        }
+        //jumping n calls ahead is seed * MULTIPLIER^n + jump(0, n)
+        int strideMul = strideMultiplier(lanes);
+        int strideAdd = RNG.jump(0, lanes);
+        IntVector seeds = IntVector.fromArray(SPECIES, laneSeeds, 0);
+        for(int base = 0; base < count; base += lanes) {
+            IntVector s = seeds;
+            for(int r = 0; r < RANDS; r++) {
+                s = s.mul(RNG.MULTIPLIER).add(RNG.INCREMENT);
+                IntVector rand = s.lanewise(VectorOperators.LSHR, 16).and(0x7FFF);
+                //rand % 40 without division, exact for 15-bit values
+                IntVector quotient = rand.mul(52429).lanewise(VectorOperators.LSHR, 21);
+                rand.sub(quotient.mul(40)).intoArray(swaps, r * lanes);
+            }
+            IntVector position = trace(IntVector.zero(SPECIES));
+            position.intoArray(origins, 0);
+            for(int k = 0, n = Math.min(lanes, count - base); k < n; k++) {
+                if(startingDeck[origins[k]] == drawnCards[0] && matchesRest(k))
+                    hits.accept(base + k);
+            }
+            seeds = seeds.mul(strideMul).add(strideAdd);
+        }
+    }
+    
+    /**
+     * Finds, for every lane, which index of the starting deck ends up at the given position.
+     */
+    private IntVector trace(IntVector position) {
+        for(int i = RANDS / 2 - 1; i >= 0; i--) {
+            IntVector x = IntVector.fromArray(SPECIES, swaps, 2 * i * lanes);
+            IntVector y = IntVector.fromArray(SPECIES, swaps, (2 * i + 1) * lanes);
+            VectorMask<Integer> atX = position.eq(x);
+            VectorMask<Integer> atY = position.eq(y).andNot(atX);
+            position = position.blend(y, atX).blend(x, atY);
+        }
+        return position;
+    }
+    
+    private boolean matchesRest(int lane) {
+        for(int p = 1; p < drawnCards.length; p++) {
+            int position = p;
+            for(int i = RANDS / 2 - 1; i >= 0; i--) {
+                int x = swaps[2 * i * lanes + lane];
+                int y = swaps[(2 * i + 1) * lanes + lane];
+                if(position == x)
+                    position = y;
+                else if(position == y)
+                    position = x;
+            }
+            if(startingDeck[position] != drawnCards[p])
+                return false;
+        }
+        return true;
+    }
+    
+    private static int strideMultiplier(int calls) {
+        int mul = 1;
+        for(int i = 0; i < calls; i++) {
+            mul *= RNG.MULTIPLIER;
+        }
+        return mul;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class AcquisitionPlannerTest {
+    
+    FMDB db;
+    FarmingCost costs;
+    AcquisitionPlanner planner;
+    
+    public AcquisitionPlannerTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        costs = FarmingCost.getInstance();
+        planner = AcquisitionPlanner.getInstance();
+    }
+    
+    @Test
+    public void testCostsAreAFixedPoint() {
+        //no recipe or drop is cheaper than the planned cost of its result, up to the order of the sums
+        int[] fusions = db.getFusionTriples();
+        for(int i = 0; i < fusions.length; i += 3) {
+            double viaFusion = planner.getCost(db.getCard(fusions[i])) + planner.getCost(db.getCard(fusions[i + 1]));
+            assertTrue(planner.getCost(db.getCard(fusions[i + 2])) <= viaFusion * (1 + 1e-12));
+        }
+        for(Ritual ritual : db.getAllRituals()) {
+            double viaRitual = planner.getCost(ritual.getRitualCard())
+                    + ritual.getMaterials().stream().mapToDouble(planner::getCost).sum();
+            assertTrue(planner.getCost(ritual.getResult()) <= viaRitual * (1 + 1e-12));
+        }
+        for(Card card : db.getAllCards()) {
+            assertTrue(planner.getCost(card) <= costs.getBestExpectedDuels(card, 1));
+        }
+    }
+    
+    @Test
+    public void testPlansAreConsistent() {
+        Map<Card,AcquisitionPlanner.Plan> plans = planner.getAllPlans();
+        assertFalse(plans.isEmpty());
+        for(AcquisitionPlanner.Plan plan : plans.values()) {
+            double farmed = plan.getDrops().entrySet().stream()
+                    .mapToDouble(e -> e.getValue() * costs.getBestExpectedDuels(e.getKey(), 1)).sum();
+            assertEquals(plan.getCost(), farmed, 1e-6 * farmed);
+            List<AcquisitionPlanner.Plan> materials = plan.getMaterials();
+            switch(plan.getMethod()) {
+                case DROP:
+                    assertTrue(materials.isEmpty());
+                    assertEquals(plan.getCard(), plan.getSource().getCard());
+                    break;
+                case FUSION:
+                    assertSame(plan.getCard(), db.fuseOrNull(materials.get(0).getCard(), materials.get(1).getCard()));
+                    break;
+                case RITUAL:
+                    assertSame(plan.getCard(), plan.getRitual().getResult());
+                    assertSame(plan.getRitual().getRitualCard(), materials.get(0).getCard());
+                    break;
+            }
+        }
+    }
+    
+    @Test
+    public void testFusionOnlyCard() {
+        //some cards are never dropped and can only be made
+        AcquisitionPlanner.Plan fused = planner.getAllPlans().values().stream()
+                .filter(p -> db.getDropSources(p.getCard()).isEmpty())
+                .findAny().get();
+        assertTrue(fused.getMethod() != AcquisitionPlanner.Method.DROP);
+        assertFalse(fused.getDrops().containsKey(fused.getCard()));
+    }
+    
+    @Test
+    public void testUnobtainableCard() {
+        for(Card card : db.getAllCards()) {
+            if(Double.isInfinite(planner.getCost(card)))
+                assertNull(planner.getPlan(card));
+            else
+                assertSame(planner.getPlan(card), planner.getAllPlans().get(card));
+        }
+    }
+    
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author sg4e
+ */
+public class AiDeckIndexTest {
+    
+    FMDB db;
+    /**
+     * Seed from the Heishin 1 duel test case, found 24,914 calls after boot.
+     */
+    final int heishinDelta = 24_914;
+    Deck heishinDeck;
+    
+    @TempDir
+    Path directory;
+    
+    public AiDeckIndexTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/heishin1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            heishinDeck = new Deck(allCards.subList(DECK_SIZE, DECK_SIZE * 2));
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    private static Deck simulate(Duelist duelist, int delta) {
+        RNG rng = RNG.fromDelta(delta);
+        //skip the player's shuffle
+        rng.advance(320);
+        Deck deck = Deck.createDuelistDeck(duelist, rng);
+        deck.shuffle(rng);
+        return deck;
+    }
+    
+    @Test
+    public void testIndexMatchesSimulation() throws IOException {
+        Duelist heishin = db.getDuelist(Duelist.Name.HEISHIN_1);
+        Duelist villager = db.getDuelist(Duelist.Name.VILLAGER_1);
+        Map<Duelist, AiDeckIndex> indices = new AiDeckIndex.Builder(directory)
+                .withDuelists(Arrays.asList(heishin, villager))
+                .withSpace(20_000, 40_000)
+                .build();
+        AiDeckIndex heishinIndex = indices.get(heishin);
+        assertEquals(heishinDeck, heishinIndex.getDeck(heishinDelta));
+        for(int delta = 20_000; delta < 40_000; delta += 997) {
+            assertEquals(simulate(heishin, delta), heishinIndex.getDeck(delta));
+            assertEquals(simulate(villager, delta), indices.get(villager).getDeck(delta));
+        }
+        assertThrows(IllegalArgumentException.class, () -> heishinIndex.getDeck(40_000));
+    }
+    
+    @Test
+    public void testQuery() throws IOException {
+        Duelist heishin = db.getDuelist(Duelist.Name.HEISHIN_1);
+        new AiDeckIndex.Builder(directory)
+                .withDuelists(Arrays.asList(heishin))
+                .withSpace(0, 5_000)
+                .build();
+        AiDeckIndex index = AiDeckIndex.open(directory.resolve(AiDeckIndex.getFileName(heishin)));
+        assertEquals(heishin, index.getDuelist());
+        Card top = heishinDeck.get(0);
+        Card other = heishinDeck.get(10);
+        DeltaSet result = index.query(view -> view.count(top) < 2 && !view.inFirstHand(other));
+        assertFalse(result.isEmpty());
+        for(int delta = 0; delta < 5_000; delta++) {
+            Deck deck = index.getDeck(delta);
+            long copies = deck.toList().stream().filter(top::equals).count();
+            boolean inHand = deck.getRange(0, 5).contains(other);
+            assertEquals(copies < 2 && !inHand, result.contains(delta), "delta " + delta);
+        }
+        DeltaSet part = index.query(1_000, 2_000, view -> view.get(0).equals(top));
+        assertTrue(part.stream().allMatch(d -> index.getDeck(d).get(0).equals(top)));
+        assertEquals(part.size(), index.query(view -> view.get(0).equals(top)).stream().filter(d -> d >= 1_000 && d < 2_000).count());
+    }
+    
+}
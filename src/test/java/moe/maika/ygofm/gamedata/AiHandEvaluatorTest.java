@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class AiHandEvaluatorTest {
+    
+    FMDB db;
+    List<Card> cards;
+    
+    public AiHandEvaluatorTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        cards = new ArrayList<>(db.getAllCards());
+        cards.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+    }
+    
+    private List<Card> randomHand(Random random, List<Card> from, int size) {
+        List<Card> hand = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            hand.add(from.get(random.nextInt(from.size())));
+        }
+        return hand;
+    }
+    
+    /**
+     * The best ATK reachable through successful fusions, without pruning or memoization.
+     */
+    private int bruteForce(Card current, List<Card> rest) {
+        int best = current.getAttack();
+        for(int i = 0; i < rest.size(); i++) {
+            Card result = current.fuseOrNull(rest.get(i));
+            if(result != null) {
+                List<Card> remaining = new ArrayList<>(rest);
+                remaining.remove(i);
+                best = Math.max(best, bruteForce(result, remaining));
+            }
+        }
+        return best;
+    }
+    
+    private static void assertChainMakes(AiHandEvaluator.Result result) {
+        Card current = result.getChain().get(0);
+        for(Card next : result.getChain().subList(1, result.getChain().size())) {
+            current = current.fuseOrNull(next);
+            assertNotNull(current);
+        }
+        assertSame(result.getCard(), current);
+        assertEquals(result.getAttack(), current.getAttack());
+    }
+    
+    @Test
+    public void testMatchesChainSolverOnSmallHands() {
+        Random random = new Random(47);
+        AiHandEvaluator evaluator = new AiHandEvaluator();
+        FusionChainSolver solver = FusionChainSolver.byAttack();
+        for(int trial = 0; trial < 500; trial++) {
+            List<Card> hand = randomHand(random, cards, 1 + trial % 5);
+            AiHandEvaluator.Result result = evaluator.evaluate(hand);
+            assertEquals(solver.solve(hand).getScore(), result.getAttack());
+            assertChainMakes(result);
+        }
+    }
+    
+    @Test
+    public void testMatchesBruteForceOnLargeHands() {
+        Random random = new Random(20);
+        AiHandEvaluator evaluator = new AiHandEvaluator();
+        //a duelist's deck pool makes for hands with plenty of fusions
+        List<Card> pool = new ArrayList<>();
+        db.getDuelist(Duelist.Name.HEISHIN_1).getPool(Pool.Type.DECK).getAllEntries().forEach(e -> pool.add(e.getCard()));
+        for(int trial = 0; trial < 40; trial++) {
+            List<Card> hand = randomHand(random, trial % 2 == 0 ? pool : cards, 12 + trial % 9);
+            int expected = Integer.MIN_VALUE;
+            for(int i = 0; i < hand.size(); i++) {
+                List<Card> rest = new ArrayList<>(hand);
+                expected = Math.max(expected, bruteForce(rest.remove(i), rest));
+            }
+            AiHandEvaluator.Result result = evaluator.evaluate(hand);
+            assertEquals(expected, result.getAttack());
+            assertChainMakes(result);
+        }
+    }
+    
+    @Test
+    public void testInvalidHands() {
+        AiHandEvaluator evaluator = new AiHandEvaluator();
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(randomHand(new Random(0), cards, 21)));
+    }
+    
+}
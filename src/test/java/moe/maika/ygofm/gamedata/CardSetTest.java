@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class CardSetTest {
+    
+    FMDB db;
+    Deck deck;
+    
+    public CardSetTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/heishin1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            deck = new Deck(allCards.subList(0, DECK_SIZE));
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    @Test
+    public void testDeckStatistics() {
+        CardSet set = CardSet.of(deck);
+        List<Card> distinct = deck.toList().stream().distinct().sorted((a, b) -> Integer.compare(a.getId(), b.getId())).collect(Collectors.toList());
+        assertEquals(distinct, set.getCards());
+        assertEquals(distinct.size(), set.size());
+        int pairs = 0;
+        for(int i = 0; i < distinct.size(); i++) {
+            for(int j = i + 1; j < distinct.size(); j++) {
+                if(db.fuseOrNull(distinct.get(i), distinct.get(j)) != null)
+                    pairs++;
+            }
+        }
+        assertEquals(pairs, set.countDistinctFusionPairs());
+        for(Card card : Arrays.asList(db.getCard(1), db.getCard(2), db.getCard(425), db.getCard(448))) {
+            long partners = distinct.stream().filter(c -> db.fuseOrNull(card, c) != null).count();
+            assertEquals(partners, set.countPartnersOf(card));
+            assertEquals(partners > 0, set.fusesWithAny(card));
+        }
+    }
+    
+    @Test
+    public void testDeckFusionPairs() {
+        List<Card> cards = deck.toList();
+        int pairs = 0;
+        for(int i = 0; i < cards.size(); i++) {
+            for(int j = i + 1; j < cards.size(); j++) {
+                if(db.fuseOrNull(cards.get(i), cards.get(j)) != null)
+                    pairs++;
+            }
+        }
+        assertEquals(pairs, CardSet.countFusionPairs(deck));
+        //three copies of a card that fuses with itself make three pairs
+        Card thunderDragon = db.getCard(425);
+        Card loner = db.getAllCards().stream().filter(c -> db.getFusionPartners(c).isEmpty()).findFirst().get();
+        List<Card> composition = new ArrayList<>(Collections.nCopies(DECK_SIZE - 3, loner));
+        composition.addAll(Collections.nCopies(3, thunderDragon));
+        assertEquals(3, CardSet.countFusionPairs(new Deck(composition)));
+        assertThrows(IllegalArgumentException.class, () -> CardSet.countFusionPairs(null));
+    }
+    
+    @Test
+    public void testPartnersOf() {
+        for(Card card : db.getAllCards()) {
+            assertEquals(db.getFusionPartners(card), CardSet.partnersOf(card).getCards());
+        }
+        Card thunderDragon = db.getCard(425);
+        assertTrue(CardSet.of(thunderDragon).fusesWithAny(thunderDragon));
+        assertEquals(0, CardSet.of(thunderDragon).countDistinctFusionPairs());
+    }
+    
+    @Test
+    public void testSetOperations() {
+        CardSet a = CardSet.of(db.getCard(1), db.getCard(2), db.getCard(3));
+        CardSet b = CardSet.of(db.getCard(2), db.getCard(3), db.getCard(700));
+        assertEquals(CardSet.of(db.getCard(2), db.getCard(3)), a.and(b));
+        assertEquals(4, a.or(b).size());
+        assertEquals(CardSet.of(db.getCard(1)), a.andNot(b));
+        assertTrue(a.andNot(a).isEmpty());
+        assertFalse(a.contains(db.getCard(700)));
+        assertTrue(b.contains(db.getCard(700)));
+        assertEquals(CardSet.of(new ArrayList<>(a.getCards())), a);
+    }
+    
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class CompactDeckTest {
+    
+    FMDB db;
+    Deck playersDeck;
+    
+    public CompactDeckTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/villager1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            playersDeck = new Deck(allCards.subList(0, DECK_SIZE));
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        CompactDeck compact = new CompactDeck(playersDeck);
+        assertEquals(playersDeck, compact.toDeck());
+        assertEquals(compact, CompactDeck.fromIds(compact.toIds()));
+        assertEquals(playersDeck.get(7).getId(), compact.getId(7));
+        assertThrows(IllegalArgumentException.class, () -> CompactDeck.fromIds(1, 2, 3));
+    }
+    
+    @Test
+    public void testSortAndShuffleMatchDeck() {
+        RNG rng = new RNG();
+        for(Comparator<Card> sort : Deck.getAllSorts()) {
+            Deck deck = new Deck(playersDeck);
+            CompactDeck compact = new CompactDeck(playersDeck);
+            RNG deckSeed = new RNG(rng);
+            RNG compactSeed = new RNG(rng);
+            deck.shuffle(deckSeed, sort);
+            compact.shuffle(compactSeed, sort);
+            assertEquals(new CompactDeck(deck), compact, sort.toString());
+            assertEquals(deckSeed.getSeed(), compactSeed.getSeed());
+            assertEquals(deckSeed.getDelta(), compactSeed.getDelta());
+            rng.rand();
+        }
+    }
+    
+    @Test
+    public void testCopyAndHash() {
+        CompactDeck compact = new CompactDeck(playersDeck);
+        CompactDeck copy = new CompactDeck(compact);
+        assertEquals(compact, copy);
+        assertEquals(compact.hashCode(), copy.hashCode());
+        assertEquals(compact.longHashCode(), copy.longHashCode());
+        copy.shuffle(new RNG());
+        assertNotEquals(compact, copy);
+        assertNotEquals(compact.longHashCode(), copy.longHashCode());
+        assertEquals(new CompactDeck(playersDeck), compact);
+    }
+    
+}
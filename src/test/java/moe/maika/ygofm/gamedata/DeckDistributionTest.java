@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class DeckDistributionTest {
+    
+    FMDB db;
+    
+    public DeckDistributionTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+    }
+    
+    @Test
+    public void testDistributionsAreConsistent() {
+        Map<Duelist, DeckDistribution> distributions = DeckDistribution.ofAll(db.getAllDuelists());
+        assertEquals(db.getAllDuelists().size(), distributions.size());
+        distributions.forEach((duelist, distribution) -> {
+            assertSame(distribution, DeckDistribution.of(duelist));
+            double expectedSize = 0;
+            for(Card card : distribution.getExpectedDeck().keySet()) {
+                double[] copies = distribution.getCopyDistribution(card);
+                assertEquals(1, copies[0] + copies[1] + copies[2] + copies[3], 1e-12);
+                for(double p : copies) {
+                    assertTrue(p >= 0);
+                }
+                expectedSize += distribution.getExpectedCopies(card);
+            }
+            //the deck always has exactly 40 cards
+            assertEquals(Deck.DECK_SIZE, expectedSize, 1e-9, duelist.toString());
+        });
+    }
+    
+    @Test
+    public void testMatchesGeneratedDecks() {
+        Duelist duelist = db.getDuelist(Duelist.Name.HEISHIN_1);
+        DeckDistribution distribution = DeckDistribution.of(duelist);
+        DuelistDeckGenerator generator = new DuelistDeckGenerator(duelist);
+        int samples = 20_000;
+        Map<Card, int[]> counts = new HashMap<>();
+        int seed = new RNG().getSeed();
+        for(int s = 0; s < samples; s++) {
+            seed = generator.generate(seed);
+            Map<Card, Integer> deck = new HashMap<>();
+            for(Card card : generator.getCards()) {
+                deck.merge(card, 1, Integer::sum);
+            }
+            for(Card card : distribution.getExpectedDeck().keySet()) {
+                counts.computeIfAbsent(card, c -> new int[4])[deck.getOrDefault(card, 0)]++;
+            }
+        }
+        counts.forEach((card, histogram) -> {
+            for(int k = 0; k < 4; k++) {
+                double p = distribution.getProbability(card, k);
+                double error = 5 * Math.sqrt(p * (1 - p) / samples) + 1e-3;
+                assertEquals(p, histogram[k] / (double) samples, error, card + " x" + k);
+            }
+        });
+    }
+    
+    @Test
+    public void testCardOutsidePool() {
+        Duelist duelist = db.getDuelist(Duelist.Name.SIMON);
+        DeckDistribution distribution = DeckDistribution.of(duelist);
+        Card outside = db.getAllCards().stream()
+                .filter(c -> duelist.getPool(Pool.Type.DECK).getEntry(c) == null)
+                .findFirst().get();
+        assertEquals(1, distribution.getProbability(outside, 0));
+        assertEquals(0, distribution.getExpectedCopies(outside));
+    }
+    
+}
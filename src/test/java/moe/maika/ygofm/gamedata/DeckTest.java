@@ -25,6 +25,9 @@ package moe.maika.ygofm.gamedata;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static moe.maika.ygofm.gamedata.Deck.ATTACK_ORDER;
 import static moe.maika.ygofm.gamedata.Deck.CARD_ID_ORDER;
@@ -34,9 +37,13 @@ import static moe.maika.ygofm.gamedata.Deck.TYPE_ORDER;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -109,6 +116,94 @@ public class DeckTest {
         assertEquals(aisDeck, generatedAiDeck);
     }
     
+    @Test
+    public void testRankSortMatchesComparisonSort() {
+        List<Card> allCards = new ArrayList<>(db.getAllCards());
+        Random random = new Random(40);
+        List<Comparator<Card>> sorts = new ArrayList<>(Deck.getAllSorts());
+        //a comparator with ties that has no ranks
+        sorts.add(Comparator.comparingInt(Card::getLevel));
+        for(int trial = 0; trial < 200; trial++) {
+            List<Card> cards = new ArrayList<>();
+            for(int i = 0; i < DECK_SIZE; i++) {
+                cards.add(allCards.get(random.nextInt(allCards.size())));
+            }
+            for(Comparator<Card> sort : sorts) {
+                Card[] expected = cards.toArray(new Card[0]);
+                Arrays.sort(expected, sort);
+                Deck deck = new Deck(cards);
+                deck.sort(sort);
+                assertEquals(Arrays.asList(expected), deck.toList(), sort.toString());
+                CompactDeck compact = new CompactDeck(new Deck(cards));
+                compact.sort(sort);
+                assertEquals(new CompactDeck(deck), compact, sort.toString());
+            }
+        }
+    }
+    
+    @Test
+    public void testIncrementalHashes() {
+        loadDecks(HEISHIN_1_DUEL_RESOURCE);
+        Deck deck = new Deck(playersDeck);
+        long multiset = deck.getMultisetHash();
+        deck.shuffle(new RNG(seed1, 0));
+        assertHashesFresh(deck);
+        assertEquals(multiset, deck.getMultisetHash());
+        assertNotEquals(playersDeck.getOrderedHash(), deck.getOrderedHash());
+        deck.swap(3, 17);
+        deck.swap(5, 5);
+        assertHashesFresh(deck);
+        deck.set(0, db.getCard(1));
+        assertHashesFresh(deck);
+        assertNotEquals(multiset, deck.getMultisetHash());
+        deck.sort(CARD_ID_ORDER);
+        assertHashesFresh(deck);
+        Deck aiDeck = Deck.createDuelistDeck(db.getDuelist(Duelist.Name.HEISHIN_1), new RNG());
+        assertHashesFresh(aiDeck);
+    }
+    
+    private static void assertHashesFresh(Deck deck) {
+        Deck rebuilt = new Deck(deck.toList());
+        assertEquals(rebuilt.getOrderedHash(), deck.getOrderedHash());
+        assertEquals(rebuilt.getMultisetHash(), deck.getMultisetHash());
+        assertEquals(rebuilt.hashCode(), deck.hashCode());
+    }
+    
+    @Test
+    public void testDuelistDeckGeneratorReuse() {
+        Duelist duelist = db.getDuelist(Duelist.Name.HEISHIN_1);
+        DuelistDeckGenerator generator = new DuelistDeckGenerator(duelist);
+        RNG rng = new RNG();
+        for(int i = 0; i < 1_000; i++) {
+            RNG expected = new RNG(rng);
+            Deck deck = Deck.createDuelistDeck(duelist, expected);
+            int after = generator.generate(rng.getSeed());
+            assertEquals(deck.toList(), generator.getCards());
+            assertEquals(expected.getSeed(), after);
+            assertEquals(expected.getDelta(), rng.getDelta() + generator.getCalls());
+            Map<Card,Long> copies = deck.toList().stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            assertTrue(copies.values().stream().allMatch(c -> c <= 3));
+            rng.rand();
+        }
+    }
+    
+    @Test
+    public void testCreateDuelistDeckWithGenerator() {
+        Duelist duelist = db.getDuelist(Duelist.Name.SETO_3);
+        DuelistDeckGenerator generator = new DuelistDeckGenerator(duelist);
+        RNG withGenerator = RNG.fromDelta(1_000);
+        RNG withDuelist = RNG.fromDelta(1_000);
+        for(int i = 0; i < 100; i++) {
+            Deck deck = Deck.createDuelistDeck(generator, withGenerator);
+            assertEquals(Deck.createDuelistDeck(duelist, withDuelist).toList(), deck.toList());
+            assertEquals(withDuelist.getDelta(), withGenerator.getDelta());
+            for(int position = 0; position < DECK_SIZE; position++) {
+                assertSame(deck.toList().get(position), generator.getCard(position));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> generator.getCard(DECK_SIZE));
+    }
+    
     @ParameterizedTest
     @ValueSource(ints = { seed1, villager1Seed, villager3Seed })
     public void testSeeds(int confirmedSeed) {
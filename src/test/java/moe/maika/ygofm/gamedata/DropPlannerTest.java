@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class DropPlannerTest {
+    
+    FMDB db;
+    
+    public DropPlannerTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+    }
+    
+    @Test
+    public void testMatchesPoolDrops() {
+        Duelist duelist = db.getDuelist(Duelist.Name.HEISHIN_1);
+        Pool pool = duelist.getPool(Pool.Type.SA_TEC);
+        List<Card> targets = pool.getAllEntries().stream().map(Pool.Entry::getCard).limit(3).collect(Collectors.toList());
+        DropPlanner planner = new DropPlanner(duelist, Pool.Type.SA_TEC);
+        RNG initial = RNG.fromDelta(1234);
+        DeltaSet drops = planner.findDrops(targets, initial, 100, 200_100);
+        RNG rng = new RNG(initial);
+        rng.advance(100);
+        int expected = 0;
+        for(int delta = 100; delta < 200_100; delta++) {
+            RNG dropRng = new RNG(rng);
+            boolean hit = targets.contains(pool.getDrop(dropRng));
+            assertEquals(hit, drops.contains(delta), "delta " + delta);
+            if(hit)
+                expected++;
+            rng.rand();
+        }
+        assertEquals(expected, drops.size());
+        int weight = targets.stream().mapToInt(c -> pool.getEntry(c).getProbability()).sum();
+        assertEquals(weight / 2048.0, planner.getProbability(targets), 1e-12);
+    }
+    
+    @Test
+    public void testAllAndNothing() {
+        Duelist duelist = db.getDuelist(Duelist.Name.SIMON);
+        DropPlanner planner = new DropPlanner(duelist, Pool.Type.BCD);
+        List<Card> everything = duelist.getPool(Pool.Type.BCD).getAllEntries().stream().map(Pool.Entry::getCard).collect(Collectors.toList());
+        assertEquals(70_000, planner.findDrops(everything, 0, 70_000).size());
+        assertEquals(0, planner.findDrops(Collections.emptyList(), 0, 70_000).size());
+        assertThrows(IllegalArgumentException.class, () -> new DropPlanner(duelist, Pool.Type.DECK));
+    }
+    
+}
@@ -26,6 +26,7 @@ package moe.maika.ygofm.gamedata;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -139,6 +141,100 @@ public class FMDBTest {
         assertEquals(thtd, db.fuse(thunderDragon, thunderDragon));
     }
     
+    @Test
+    public void testFusionTableMatchesRawFusions() {
+        int[] fusions = db.getFusionTriples();
+        assertEquals(RawDatabase.getRawFusion().length * 3, fusions.length);
+        for(int i = 0; i < fusions.length; i += 3) {
+            assertEquals(fusions[i + 2], db.fuseIds(fusions[i], fusions[i + 1]));
+            assertEquals(fusions[i + 2], db.fuseIds(fusions[i + 1], fusions[i]));
+        }
+        assertEquals(0, db.fuseIds(1, 2));
+        assertEquals(0, db.fuseIds(0, 19));
+        assertEquals(0, db.fuseIds(448, 100_000));
+        assertNull(db.getCard(0));
+        assertNull(db.getCard(100_000));
+    }
+    
+    @Test
+    public void testFuseAllMatchesFuseOrNull() {
+        List<Card> cards = new ArrayList<>(db.getAllCards());
+        int n = cards.size();
+        int[] first = new int[n * 7];
+        int[] second = new int[n * 7];
+        for(int i = 0; i < first.length; i++) {
+            first[i] = cards.get(i % n).getId();
+            second[i] = cards.get((i * 31 + i / n) % n).getId();
+        }
+        int[] out = new int[first.length];
+        db.fuseAll(first, second, out);
+        for(int i = 0; i < first.length; i++) {
+            Card result = db.fuseOrNull(db.getCard(first[i]), db.getCard(second[i]));
+            assertEquals(result == null ? 0 : result.getId(), out[i]);
+        }
+        assertThrows(IllegalArgumentException.class, () -> db.fuseAll(first, second, new int[1]));
+    }
+    
+    @Test
+    public void testFusionAdjacency() {
+        //Spike Seadra + Right Arm, and two Thunder Dragons
+        int[] hand = { 448, 425, 19, 2, 425 };
+        long[] rows = new long[8];
+        Arrays.fill(rows, -1);
+        int pairs = db.fusionAdjacency(hand, hand.length, rows);
+        int expectedPairs = 0;
+        for(int i = 0; i < hand.length; i++) {
+            for(int j = 0; j < hand.length; j++) {
+                boolean fuses = i != j && db.fuseOrNull(db.getCard(hand[i]), db.getCard(hand[j])) != null;
+                assertEquals(fuses, (rows[i] >>> j & 1) != 0);
+                if(fuses && i < j)
+                    expectedPairs++;
+            }
+        }
+        assertEquals(expectedPairs, pairs);
+        assertTrue((rows[0] & 1L << 2) != 0);
+        assertTrue((rows[1] & 1L << 4) != 0);
+        assertEquals(-1, rows[5]);
+        assertThrows(IllegalArgumentException.class, () -> db.fusionAdjacency(hand, 6, rows));
+    }
+    
+    @Test
+    public void testFusionsInto() {
+        Card spikeSeadra = db.getCard(448);
+        Card rightArmOfTheForbiddenOne = db.getCard(19);
+        Card result = spikeSeadra.fuseWith(rightArmOfTheForbiddenOne);
+        List<Fusion> fusions = db.getFusionsInto(result);
+        assertTrue(fusions.stream().anyMatch(f -> f.getFirstMaterial() == rightArmOfTheForbiddenOne && f.getSecondMaterial() == spikeSeadra));
+        for(Fusion fusion : fusions) {
+            assertSame(result, fusion.getResult());
+            assertSame(result, db.fuseOrNull(fusion.getFirstMaterial(), fusion.getSecondMaterial()));
+            assertTrue(fusion.getFirstMaterial().getId() <= fusion.getSecondMaterial().getId());
+        }
+        int total = db.getAllCards().stream().mapToInt(c -> db.getFusionsInto(c).size()).sum();
+        assertEquals(RawDatabase.getRawFusion().length, total);
+        int[] triples = db.getFusionTriples();
+        for(Card card : db.getAllCards()) {
+            long results = IntStream.range(0, triples.length / 3).filter(i -> triples[3 * i + 2] == card.getId()).count();
+            assertEquals(results, db.getFusionsInto(card).size());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> fusions.clear());
+    }
+    
+    @Test
+    public void testFusionPartners() {
+        for(Card card : new Card[] { db.getCard(1), db.getCard(2), db.getCard(425), db.getCard(448) }) {
+            List<Card> expected = new ArrayList<>();
+            for(Card other : db.getAllCards()) {
+                if(db.fuseOrNull(card, other) != null)
+                    expected.add(other);
+            }
+            expected.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            assertEquals(expected, db.getFusionPartners(card));
+        }
+        assertTrue(db.getFusionPartners(db.getCard(425)).contains(db.getCard(425)));
+        assertThrows(IllegalArgumentException.class, () -> db.getFusionPartners(null));
+    }
+    
     @Test
     public void testIsEquippableTrue() {
         Card thtd = db.getCard(613);
@@ -253,4 +349,30 @@ public class FMDBTest {
         materialIds.forEach(id -> assertTrue(hamburgerRecipe.getMaterials().stream().anyMatch(c -> c.getId() == id)));
     }
     
+    @Test
+    public void testDropSourcesMatchPools() {
+        for(Card card : db.getAllCards()) {
+            for(Pool.Type type : Pool.Type.values()) {
+                List<DropSource> sources = db.getDropSources(card, type);
+                long expected = db.getAllDuelists().stream()
+                        .filter(d -> d.getPool(type).getEntry(card) != null && d.getPool(type).getEntry(card).getProbability() > 0)
+                        .count();
+                assertEquals(expected, sources.size());
+                for(int i = 0; i < sources.size(); i++) {
+                    DropSource source = sources.get(i);
+                    assertEquals(card, source.getCard());
+                    assertEquals(type, source.getType());
+                    assertEquals(source.getDuelist().getPool(type).getEntry(card).getProbability(), source.getProbability());
+                    if(i > 0)
+                        assertTrue(sources.get(i - 1).getProbability() >= source.getProbability());
+                }
+            }
+        }
+        Card raigeki = db.getCard(337);
+        List<DropSource> drops = db.getDropSources(raigeki);
+        assertFalse(drops.isEmpty());
+        assertTrue(drops.stream().noneMatch(source -> source.getType() == Pool.Type.DECK));
+        assertThrows(UnsupportedOperationException.class, () -> drops.clear());
+    }
+    
 }
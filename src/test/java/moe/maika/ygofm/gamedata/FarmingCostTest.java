@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class FarmingCostTest {
+    
+    FMDB db;
+    FarmingCost costs;
+    
+    public FarmingCostTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        costs = FarmingCost.getInstance();
+    }
+    
+    @Test
+    public void testMatchesPools() {
+        for(Duelist duelist : db.getAllDuelists()) {
+            for(Pool.Type type : Pool.Type.values()) {
+                for(Pool.Entry entry : duelist.getPool(type).getAllEntries()) {
+                    double p = entry.getProbability() / 2048.0;
+                    assertEquals(p, costs.getProbability(entry.getCard(), duelist, type));
+                    if(type != Pool.Type.DECK) {
+                        assertEquals(2 / p, costs.getExpectedDuels(entry.getCard(), duelist, type, 2), 1e-9);
+                        assertEquals(3 * (1 - p) / (p * p), costs.getVariance(entry.getCard(), duelist, type, 3), 1e-6);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testBestSourcesAgreeWithDropSources() {
+        Card meteorBlackDragon = db.getCard(711);
+        for(Card card : new Card[] { db.getCard(1), meteorBlackDragon, db.getCard(35) }) {
+            List<DropSource> drops = db.getDropSources(card);
+            List<FarmingCost.Estimate> best = costs.getBestSources(card, 1, 5);
+            assertEquals(Math.min(5, drops.size()), best.size());
+            for(int i = 0; i < best.size(); i++) {
+                assertEquals(drops.get(i).getDuelist(), best.get(i).getDuelist());
+                assertEquals(drops.get(i).getType(), best.get(i).getRank());
+                assertEquals(2048.0 / drops.get(i).getProbability(), best.get(i).getExpectedDuels(), 1e-9);
+            }
+            double expected = drops.isEmpty() ? Double.POSITIVE_INFINITY : 3 * 2048.0 / drops.get(0).getProbability();
+            assertEquals(expected, costs.getBestExpectedDuels(card, 3), 1e-9);
+        }
+    }
+    
+    @Test
+    public void testUnobtainableCard() {
+        Card unobtainable = db.getAllCards().stream().filter(c -> db.getDropSources(c).isEmpty()).findAny().get();
+        assertTrue(costs.getBestSources(unobtainable, 1, 5).isEmpty());
+        assertEquals(Double.POSITIVE_INFINITY, costs.getBestExpectedDuels(unobtainable, 1));
+    }
+    
+    @Test
+    public void testInvalidArguments() {
+        Card card = db.getCard(1);
+        assertThrows(IllegalArgumentException.class, () -> costs.getBestSources(card, 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> costs.getBestSources(card, 4, 5));
+        assertThrows(IllegalArgumentException.class, () -> costs.getBestSources(card, 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> costs.getExpectedDuels(card, null, Pool.Type.BCD, 1));
+        assertThrows(IllegalArgumentException.class, () -> costs.getBestSources(null, 1, 5));
+        assertThrows(IllegalArgumentException.class, () -> costs.getBestExpectedDuels(null, 1));
+        Duelist duelist = db.getDuelist(1);
+        assertThrows(IllegalArgumentException.class, () -> costs.getExpectedDuels(card, duelist, Pool.Type.DECK, 1));
+        assertThrows(IllegalArgumentException.class, () -> costs.getVariance(card, duelist, Pool.Type.DECK, 1));
+    }
+    
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class FusionChainSolverTest {
+    
+    FMDB db;
+    List<Card> cards;
+    
+    public FusionChainSolverTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        cards = new ArrayList<>(db.getAllCards());
+        cards.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+    }
+    
+    private List<Card> randomHand(Random random, int size) {
+        List<Card> hand = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            hand.add(cards.get(random.nextInt(cards.size())));
+        }
+        return hand;
+    }
+    
+    private static Card play(List<Card> chain) {
+        Card current = chain.get(0);
+        for(Card next : chain.subList(1, chain.size())) {
+            current = current.fuseWith(next);
+        }
+        return current;
+    }
+    
+    /**
+     * The best ATK of any ordered chain, enumerated naively.
+     */
+    private static int bruteForce(Card current, List<Card> rest) {
+        int best = current.getAttack();
+        for(int i = 0; i < rest.size(); i++) {
+            List<Card> remaining = new ArrayList<>(rest);
+            Card next = remaining.remove(i);
+            best = Math.max(best, bruteForce(current.fuseWith(next), remaining));
+        }
+        return best;
+    }
+    
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(46);
+        FusionChainSolver solver = FusionChainSolver.byAttack();
+        for(int trial = 0; trial < 300; trial++) {
+            List<Card> hand = randomHand(random, 1 + trial % 5);
+            Card field = trial % 3 == 0 ? cards.get(random.nextInt(cards.size())) : null;
+            int expected = field == null ? Integer.MIN_VALUE : bruteForce(field, hand);
+            for(int i = 0; i < hand.size(); i++) {
+                List<Card> rest = new ArrayList<>(hand);
+                expected = Math.max(expected, bruteForce(rest.remove(i), rest));
+            }
+            FusionChainSolver.Result result = solver.solve(hand, field);
+            assertEquals(expected, result.getScore());
+            assertEquals(expected, result.getCard().getAttack());
+            assertSame(result.getCard(), play(result.getChain()));
+            assertEquals(field != null && result.isFromField(), result.isFromField());
+            if(result.isFromField())
+                assertSame(field, result.getChain().get(0));
+        }
+    }
+    
+    @Test
+    public void testFusesForTarget() {
+        Card spikeSeadra = db.getCard(448);
+        Card rightArmOfTheForbiddenOne = db.getCard(19);
+        Card target = spikeSeadra.fuseWith(rightArmOfTheForbiddenOne);
+        List<Card> hand = Arrays.asList(db.getCard(2), rightArmOfTheForbiddenOne, db.getCard(1), spikeSeadra);
+        FusionChainSolver.Result result = FusionChainSolver.forTarget(target).solve(hand);
+        assertSame(target, result.getCard());
+        assertEquals(1, result.getScore());
+        assertEquals(2, result.getChain().size());
+        assertSame(target, play(result.getChain()));
+        
+        FusionChainSolver.Result missing = FusionChainSolver.forTarget(target).solve(Arrays.asList(spikeSeadra, db.getCard(1)));
+        assertEquals(0, missing.getScore());
+    }
+    
+    @Test
+    public void testFieldOnly() {
+        Card thunderDragon = db.getCard(425);
+        FusionChainSolver.Result result = FusionChainSolver.byDefense().solve(Collections.emptyList(), thunderDragon);
+        assertTrue(result.isFromField());
+        assertSame(thunderDragon, result.getCard());
+        
+        FusionChainSolver.Result fused = FusionChainSolver.byAttack().solve(Arrays.asList(thunderDragon), thunderDragon);
+        assertTrue(fused.isFromField());
+        assertSame(db.getCard(613), fused.getCard());
+        assertFalse(FusionChainSolver.byAttack().solve(Arrays.asList(thunderDragon)).isFromField());
+    }
+    
+    @Test
+    public void testInvalidHands() {
+        FusionChainSolver solver = FusionChainSolver.byAttack();
+        assertThrows(IllegalArgumentException.class, () -> solver.solve(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> solver.solve(randomHand(new Random(0), 6)));
+    }
+    
+}
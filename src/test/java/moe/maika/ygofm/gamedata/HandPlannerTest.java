@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.CARD_ID_ORDER;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ *
+ * @author sg4e
+ */
+public class HandPlannerTest {
+    
+    FMDB db;
+    final int villager1Seed = 1882591394;
+    final int villager1Delta = 19_113;
+    
+    Deck playersDeck;
+    List<Card> drawnCards;
+    
+    public HandPlannerTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/villager1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            playersDeck = new Deck(allCards.subList(0, DECK_SIZE));
+            drawnCards = playersDeck.getRange(0, DECK_SIZE / 2);
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    private static Stream<SeedSearchBackend> provideBackends() {
+        return SeedSearchBackend.getAvailableBackends().stream();
+    }
+    
+    @Test
+    public void testFindsKnownHand() {
+        List<Card> hand = drawnCards;
+        RNG current = RNG.fromDelta(10_000);
+        List<HandPlanner.Match> matches = new HandPlanner.Builder(playersDeck, hand::equals)
+                .withLength(hand.size())
+                .withSort(CARD_ID_ORDER)
+                .withSpace(0, 30_000)
+                .withCurrentState(current)
+                .build()
+                .plan();
+        assertEquals(1, matches.size());
+        HandPlanner.Match match = matches.get(0);
+        assertEquals(villager1Seed, match.getRng().getSeed());
+        assertEquals(villager1Delta, match.getDelta());
+        assertEquals(villager1Delta - 10_000, match.getDistance());
+        assertEquals(hand, match.getCards());
+    }
+    
+    @ParameterizedTest
+    @MethodSource("provideBackends")
+    public void testMatchesShuffle(SeedSearchBackend backend) {
+        Card wanted = playersDeck.get(3);
+        List<Integer> expected = new ArrayList<>();
+        for(int delta = 1_000; delta < 3_000; delta++) {
+            Deck deck = new Deck(playersDeck);
+            deck.shuffle(RNG.fromDelta(delta), CARD_ID_ORDER);
+            if(deck.getRange(0, 10).contains(wanted) && !deck.get(0).equals(wanted))
+                expected.add(delta);
+        }
+        List<HandPlanner.Match> matches = new HandPlanner.Builder(playersDeck, cards -> cards.contains(wanted) && !cards.get(0).equals(wanted))
+                .withLength(10)
+                .withSpace(1_000, 3_000)
+                .withBackend(backend)
+                .build()
+                .plan();
+        assertEquals(expected, matches.stream().map(HandPlanner.Match::getDelta).collect(Collectors.toList()));
+    }
+    
+    @Test
+    public void testMaxResults() {
+        Card wanted = playersDeck.get(0);
+        List<HandPlanner.Match> all = new HandPlanner.Builder(playersDeck, cards -> cards.get(0).equals(wanted))
+                .withSpace(0, 100_000)
+                .build()
+                .plan();
+        List<HandPlanner.Match> first = new HandPlanner.Builder(playersDeck, cards -> cards.get(0).equals(wanted))
+                .withSpace(0, 100_000)
+                .withMaxResults(3)
+                .build()
+                .plan();
+        assertTrue(all.size() > 3);
+        assertEquals(3, first.size());
+        for(int i = 0; i < 3; i++) {
+            assertEquals(all.get(i).getDelta(), first.get(i).getDelta());
+            assertEquals(all.get(i).getDelta(), first.get(i).getDistance());
+        }
+    }
+    
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.CARD_ID_ORDER;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class HandProbabilityTest {
+    
+    FMDB db;
+    final int villager1Delta = 19_113;
+    
+    Deck playersDeck;
+    List<Card> drawnCards;
+    HandProbability calculator;
+    Card single, pair;
+    
+    public HandProbabilityTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/villager1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            playersDeck = new Deck(allCards.subList(0, DECK_SIZE));
+            drawnCards = playersDeck.getRange(0, DECK_SIZE / 2);
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+        calculator = new HandProbability(playersDeck);
+        Map<Card, Long> counts = playersDeck.toList().stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        single = counts.entrySet().stream().filter(e -> e.getValue() == 1).findFirst().get().getKey();
+        pair = counts.entrySet().stream().filter(e -> e.getValue() == 2).findFirst().get().getKey();
+    }
+    
+    private static double choose(int n, int k) {
+        double result = 1;
+        for(int i = 0; i < k; i++) {
+            result = result * (n - i) / (i + 1);
+        }
+        return result;
+    }
+    
+    @Test
+    public void testHypergeometric() {
+        assertEquals(5.0 / 40, calculator.getProbability(Collections.singletonList(single), 5), 1e-12);
+        assertEquals(1 - choose(38, 5) / choose(40, 5), calculator.getProbability(Collections.singletonList(pair), 5), 1e-12);
+        //two specific cards: 1 - P(no single) - P(no pair) + P(neither)
+        double both = 1 - choose(39, 5) / choose(40, 5) - choose(38, 5) / choose(40, 5) + choose(37, 5) / choose(40, 5);
+        assertEquals(both, calculator.getProbability(Arrays.asList(single, pair), 5), 1e-12);
+        //both copies
+        assertEquals(choose(38, 3) / choose(40, 5), calculator.getProbability(Arrays.asList(pair, pair), 5), 1e-12);
+        assertEquals(0, calculator.getProbability(Arrays.asList(single, single), 40));
+        assertEquals(1, calculator.getProbability(playersDeck.toList(), 40));
+        assertEquals(1, calculator.getProbability(Collections.emptyList(), 0));
+    }
+    
+    @Test
+    public void testBatchMatchesSingleQueries() {
+        List<List<Card>> queries = Arrays.asList(Collections.singletonList(single), Arrays.asList(pair, pair), Arrays.asList(single, pair));
+        double[] batch = calculator.getProbabilities(queries, HandProbability.getCardsDrawnByTurn(3));
+        for(int q = 0; q < queries.size(); q++) {
+            assertEquals(calculator.getProbability(queries.get(q), 7), batch[q]);
+        }
+    }
+    
+    @Test
+    public void testSeedProbabilities() {
+        List<List<Card>> queries = Arrays.asList(drawnCards.subList(0, 5), Collections.singletonList(pair), Collections.singletonList(db.getCard(1)));
+        //the known seed draws exactly the recorded hand
+        double[] known = calculator.getSeedProbabilities(queries, 5, CARD_ID_ORDER, new RNG(), villager1Delta, villager1Delta + 1);
+        assertEquals(1, known[0]);
+        assertEquals(0, known[2]);
+        //over a large window, the real shuffle is close to uniform for a single card
+        double[] window = calculator.getSeedProbabilities(queries, 5, CARD_ID_ORDER, new RNG(), 0, 200_000);
+        assertEquals(calculator.getProbability(queries.get(1), 5), window[1], 0.05);
+        assertEquals(0, window[2]);
+    }
+    
+    @Test
+    public void testInvalidDrawn() {
+        assertThrows(IllegalArgumentException.class, () -> calculator.getProbability(Collections.singletonList(single), 41));
+        assertThrows(IllegalArgumentException.class, () -> HandProbability.getCardsDrawnByTurn(0));
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class PoolTest {
+    
+    FMDB db;
+    
+    public PoolTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+    }
+    
+    /**
+     * The drop found by walking the entries in card id order, as the game does.
+     */
+    private static Card walk(Pool pool, int rand) {
+        rand = rand % 2048;
+        List<Pool.Entry> entries = pool.getAllEntries().stream()
+                .sorted(Comparator.comparingInt(e -> e.getCard().getId()))
+                .collect(Collectors.toList());
+        for(Pool.Entry e : entries) {
+            rand -= e.getProbability();
+            if(rand < 0)
+                return e.getCard();
+        }
+        return null;
+    }
+    
+    @Test
+    public void testGetDropMatchesWalk() {
+        for(Duelist duelist : db.getAllDuelists()) {
+            for(Pool.Type type : Pool.Type.values()) {
+                Pool pool = duelist.getPool(type);
+                for(int rand = 0; rand < 0x8000; rand += 7) {
+                    assertEquals(walk(pool, rand), pool.getDrop(rand));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testShortPool() {
+        Card first = db.getCard(1);
+        Card second = db.getCard(2);
+        Pool pool = new Pool(Arrays.asList(new Pool.Entry(second, 1000), new Pool.Entry(first, 24)));
+        assertEquals(first, pool.getDrop(0));
+        assertEquals(first, pool.getDrop(2048 + 23));
+        assertEquals(second, pool.getDrop(24));
+        assertEquals(second, pool.getDrop(1023));
+        //jumping off the end of the pool drops nothing
+        assertNull(pool.getDrop(1024));
+        assertNull(pool.getDrop(2047));
+        assertEquals(first, pool.getDrop(-5));
+    }
+    
+}
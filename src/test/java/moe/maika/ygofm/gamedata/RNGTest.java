@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author sg4e
+ */
+public class RNGTest {
+    
+    public RNGTest() {
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 319, 320, 19113, 83577 })
+    public void testAdvanceMatchesRand(int calls) {
+        RNG stepped = new RNG();
+        for(int i = 0; i < calls; i++) {
+            stepped.rand();
+        }
+        RNG jumped = new RNG();
+        jumped.advance(calls);
+        assertEquals(stepped.getSeed(), jumped.getSeed());
+        assertEquals(stepped.getDelta(), jumped.getDelta());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 320, 1_000_000 })
+    public void testAdvanceBackwards(int calls) {
+        RNG rng = RNG.fromDelta(calls);
+        rng.advance(-calls);
+        assertEquals(new RNG().getSeed(), rng.getSeed());
+        assertEquals(0, rng.getDelta());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 320, 19113, 1_000_000, -1, Integer.MIN_VALUE })
+    public void testDistanceInvertsAdvance(int calls) {
+        RNG from = RNG.fromDelta(83577);
+        RNG to = new RNG(from);
+        to.advance(calls);
+        assertEquals(calls & 0xFFFFFFFFL, RNG.distance(from.getSeed(), to.getSeed()));
+    }
+    
+}
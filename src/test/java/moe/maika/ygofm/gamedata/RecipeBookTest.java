@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class RecipeBookTest {
+    
+    FMDB db;
+    Card spikeSeadra, rightArmOfTheForbiddenOne, kaminariAttack, thunderDragon, twinHeadedThunderDragon;
+    
+    public RecipeBookTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        spikeSeadra = db.getCard(448);
+        rightArmOfTheForbiddenOne = db.getCard(19);
+        kaminariAttack = db.getCard(458);
+        thunderDragon = db.getCard(425);
+        twinHeadedThunderDragon = db.getCard(613);
+    }
+    
+    private static void assertReplays(RecipeBook.Recipe recipe) {
+        List<Card> materials = recipe.getMaterials();
+        List<Card> results = recipe.getIntermediateResults();
+        assertEquals(recipe.size(), materials.size());
+        assertSame(materials.get(0), results.get(0));
+        Card current = materials.get(0);
+        for(int i = 1; i < materials.size(); i++) {
+            current = current.fuseOrNull(materials.get(i));
+            assertSame(results.get(i), current);
+        }
+        assertSame(recipe.getResult(), current);
+    }
+    
+    @Test
+    public void testCountsSinglePairs() {
+        RecipeBook book = new RecipeBook.Builder().withMaxMaterials(2).build();
+        for(Card card : db.getAllCards()) {
+            long ordered = db.getFusionsInto(card).stream()
+                    .mapToLong(f -> f.getFirstMaterial() == f.getSecondMaterial() ? 1 : 2).sum();
+            assertEquals(1 + ordered, book.countChains(card));
+        }
+        assertEquals(1, book.getMinMaterials(kaminariAttack));
+    }
+    
+    @Test
+    public void testTrunk() {
+        RecipeBook book = new RecipeBook.Builder().withCards(Arrays.asList(spikeSeadra, rightArmOfTheForbiddenOne, thunderDragon)).build();
+        List<RecipeBook.Recipe> recipes = book.getRecipes(kaminariAttack, 10);
+        assertTrue(recipes.stream().anyMatch(r -> r.getMaterials().equals(Arrays.asList(spikeSeadra, rightArmOfTheForbiddenOne))));
+        assertTrue(recipes.stream().anyMatch(r -> r.getMaterials().equals(Arrays.asList(rightArmOfTheForbiddenOne, spikeSeadra))));
+        recipes.forEach(RecipeBookTest::assertReplays);
+        assertEquals(2, book.getMinMaterials(kaminariAttack));
+        assertEquals(1, book.getMinMaterials(spikeSeadra));
+        
+        //one Thunder Dragon can't fuse with itself
+        RecipeBook oneCopy = new RecipeBook.Builder().withCards(Collections.singletonMap(thunderDragon, 1)).build();
+        assertEquals(2, oneCopy.getMinMaterials(twinHeadedThunderDragon));
+        assertNull(oneCopy.getCheapestRecipe(twinHeadedThunderDragon));
+        RecipeBook twoCopies = new RecipeBook.Builder().withCards(Collections.singletonMap(thunderDragon, 2)).build();
+        RecipeBook.Recipe recipe = twoCopies.getCheapestRecipe(twinHeadedThunderDragon);
+        assertNotNull(recipe);
+        assertEquals(Arrays.asList(thunderDragon, thunderDragon), recipe.getMaterials());
+    }
+    
+    @Test
+    public void testCheapestRecipesInParallel() {
+        //a few cards, so most results need fusions and some can't be made from the copies given
+        RecipeBook book = new RecipeBook.Builder()
+                .withCards(Arrays.asList(spikeSeadra, rightArmOfTheForbiddenOne, thunderDragon, thunderDragon, db.getCard(1), db.getCard(2)))
+                .build();
+        Map<Card,RecipeBook.Recipe> cheapest = book.getCheapestRecipes();
+        int made = 0;
+        for(Card card : db.getAllCards()) {
+            RecipeBook.Recipe expected = book.getCheapestRecipe(card);
+            RecipeBook.Recipe recipe = cheapest.get(card);
+            if(expected == null) {
+                assertNull(recipe);
+                continue;
+            }
+            made++;
+            assertNotNull(recipe);
+            assertEquals(expected.getMaterials(), recipe.getMaterials());
+            assertReplays(recipe);
+            assertTrue(recipe.size() >= book.getMinMaterials(card));
+        }
+        assertEquals(made, cheapest.size());
+        assertTrue(cheapest.values().stream().anyMatch(r -> r.size() > 1));
+        assertEquals(2, cheapest.get(kaminariAttack).size());
+        assertEquals(Arrays.asList(thunderDragon, thunderDragon), cheapest.get(twinHeadedThunderDragon).getMaterials());
+    }
+    
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RecipeBook.Builder().withMaxMaterials(6));
+        RecipeBook.Builder builder = new RecipeBook.Builder();
+        builder.build();
+        assertThrows(IllegalStateException.class, () -> builder.build());
+    }
+    
+}
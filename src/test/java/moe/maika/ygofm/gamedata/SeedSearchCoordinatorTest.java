@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author sg4e
+ */
+public class SeedSearchCoordinatorTest {
+    
+    FMDB db;
+    final int villager1Seed = 1882591394;
+    final int villager1Delta = 19_113;
+    
+    Deck playersDeck;
+    List<Card> drawnCards;
+    
+    public SeedSearchCoordinatorTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/villager1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            playersDeck = new Deck(allCards.subList(0, DECK_SIZE));
+            drawnCards = playersDeck.getRange(0, DECK_SIZE / 2);
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    private SeedSearch buildSearch() {
+        return new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(0, 40_000)
+                .build();
+    }
+    
+    private void assertFoundVillager1(Map<Integer,Set<RNG>> results) {
+        assertNotNull(results);
+        Set<RNG> seeds = results.get(new RNG().getSeed());
+        assertEquals(1, seeds.size());
+        RNG seed = seeds.iterator().next();
+        assertEquals(villager1Seed, seed.getSeed());
+        assertEquals(villager1Delta, seed.getDelta());
+    }
+    
+    @Test
+    public void testWorkerProcessesAndLostWorker() throws Exception {
+        try(SeedSearchCoordinator coordinator = new SeedSearchCoordinator(buildSearch(), 4_000).start(0)) {
+            assertEquals(10, coordinator.getShardCount());
+            //a worker that takes a shard and then dies before reporting it
+            try(Socket lost = new Socket("localhost", coordinator.getPort())) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(lost.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(lost.getOutputStream(), StandardCharsets.UTF_8);
+                assertEquals(SeedSearchCoordinator.PROTOCOL, in.readLine());
+                assertTrue(in.readLine().startsWith("JOB "));
+                SeedSearchCoordinator.send(out, "NEXT");
+                assertTrue(in.readLine().startsWith("SHARD 0 "));
+            }
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            List<Process> workers = new ArrayList<>();
+            for(int i = 0; i < 2; i++) {
+                workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        SeedSearchWorker.class.getName(), "localhost", Integer.toString(coordinator.getPort()))
+                        .redirectErrorStream(true)
+                        .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "seedsearch-worker-" + i + ".log"))
+                        .start());
+            }
+            Map<Integer,Set<RNG>> results = coordinator.await(2, TimeUnit.MINUTES);
+            for(Process worker : workers) {
+                assertTrue(worker.waitFor(1, TimeUnit.MINUTES));
+                assertEquals(0, worker.exitValue());
+            }
+            assertFoundVillager1(results);
+            assertEquals(coordinator.getShardCount(), coordinator.getCompletedShardCount());
+        }
+    }
+    
+    @Test
+    public void testInProcessWorkers() throws Exception {
+        try(SeedSearchCoordinator coordinator = new SeedSearchCoordinator(buildSearch(), 7_000).start(0)) {
+            int[] shardsSearched = new int[2];
+            Thread[] threads = new Thread[2];
+            for(int i = 0; i < threads.length; i++) {
+                int worker = i;
+                threads[i] = new Thread(() -> {
+                    try {
+                        shardsSearched[worker] = SeedSearchWorker.run("localhost", coordinator.getPort());
+                    }
+                    catch(Exception ex) {
+                        fail(ex);
+                    }
+                });
+                threads[i].start();
+            }
+            assertFoundVillager1(coordinator.await(1, TimeUnit.MINUTES));
+            for(Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(coordinator.getShardCount(), shardsSearched[0] + shardsSearched[1]);
+        }
+    }
+    
+    @Test
+    public void testCustomSortRejected() {
+        SeedSearch search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSort((c1, c2) -> c2.getId() - c1.getId())
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> new SeedSearchCoordinator(search));
+    }
+    
+}
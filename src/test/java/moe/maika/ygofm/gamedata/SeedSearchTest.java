@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2024 sg4e.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package moe.maika.ygofm.gamedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static moe.maika.ygofm.gamedata.Deck.CARD_ID_ORDER;
+import static moe.maika.ygofm.gamedata.Deck.DECK_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ *
+ * @author sg4e
+ */
+public class SeedSearchTest {
+    
+    FMDB db;
+    /**
+     * Seed from the Villager 1 duel test case, found 19,113 calls after boot.
+     */
+    final int villager1Seed = 1882591394;
+    final int villager1Delta = 19_113;
+    
+    Deck playersDeck;
+    List<Card> drawnCards;
+    
+    public SeedSearchTest() {
+    }
+    
+    @BeforeEach
+    public void init() {
+        db = FMDB.getInstance();
+        try(Stream<String> stream = Files.lines(Paths.get(getClass().getResource("/villager1.txt").toURI()))) {
+            List<Card> allCards = stream.map(Integer::parseInt).map(db::getCard).collect(Collectors.toList());
+            playersDeck = new Deck(allCards.subList(0, DECK_SIZE));
+            drawnCards = playersDeck.getRange(0, DECK_SIZE / 2);
+        }
+        catch(Exception ex) {
+            fail(ex);
+        }
+    }
+    
+    @Test
+    public void testSearchWithinSubspace() {
+        Set<RNG> seeds = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSort(CARD_ID_ORDER)
+                .withSpace(10_000, 30_000)
+                .build()
+                .search();
+        assertEquals(1, seeds.size());
+        RNG seed = seeds.iterator().next();
+        assertEquals(villager1Seed, seed.getSeed());
+        assertEquals(villager1Delta, seed.getDelta());
+    }
+    
+    @Test
+    public void testSearchMissesOutsideSubspace() {
+        Set<RNG> seeds = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(20_000, 30_000)
+                .build()
+                .search();
+        assertTrue(seeds.isEmpty());
+    }
+    
+    @Test
+    public void testSearchByInitialSeed() {
+        RNG boot = new RNG();
+        //an initial seed that is 5,000 calls into the boot sequence should find the same seed 5,000 calls sooner
+        RNG later = RNG.fromDelta(5_000);
+        RNG unrelated = new RNG(12345, 0);
+        Map<Integer,Set<RNG>> seeds = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withInitialSeeds(Arrays.asList(boot, later, unrelated))
+                .withSpace(0, 20_000)
+                .build()
+                .searchByInitialSeed();
+        assertEquals(Arrays.asList(boot.getSeed(), later.getSeed(), unrelated.getSeed()), new ArrayList<>(seeds.keySet()));
+        assertEquals(1, seeds.get(boot.getSeed()).size());
+        assertEquals(1, seeds.get(later.getSeed()).size());
+        assertTrue(seeds.get(unrelated.getSeed()).isEmpty());
+        RNG fromLater = seeds.get(later.getSeed()).iterator().next();
+        assertEquals(villager1Seed, fromLater.getSeed());
+        assertEquals(villager1Delta, fromLater.getDelta());
+    }
+    
+    private static Stream<SeedSearchBackend> provideBackends() {
+        return SeedSearchBackend.getAvailableBackends().stream();
+    }
+    
+    @ParameterizedTest
+    @MethodSource("provideBackends")
+    public void testBackendMatchesScalar(SeedSearchBackend backend) {
+        Deck startingDeck = new Deck(playersDeck);
+        startingDeck.sort(CARD_ID_ORDER);
+        int[] cards = startingDeck.toList().stream().mapToInt(Card::getId).toArray();
+        //a one-card prefix produces plenty of hits to compare
+        for(int drawn : new int[] { 0, 1, 3 }) {
+            int[] drawnIds = drawnCards.subList(0, drawn).stream().mapToInt(Card::getId).toArray();
+            List<Integer> scalarHits = new ArrayList<>();
+            List<Integer> backendHits = new ArrayList<>();
+            SeedSearchBackends.SCALAR.newEvaluator(cards, drawnIds).evaluate(new RNG().getSeed(), 20_003, scalarHits::add);
+            backend.newEvaluator(cards, drawnIds).evaluate(new RNG().getSeed(), 20_003, backendHits::add);
+            assertFalse(scalarHits.isEmpty());
+            assertEquals(scalarHits, backendHits);
+        }
+    }
+    
+    @ParameterizedTest
+    @MethodSource("provideBackends")
+    public void testSearchWithBackend(SeedSearchBackend backend) {
+        Set<RNG> seeds = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withBackend(backend)
+                .withSpace(10_000, 30_000)
+                .build()
+                .search();
+        assertEquals(1, seeds.size());
+        assertEquals(villager1Seed, seeds.iterator().next().getSeed());
+    }
+    
+    @Test
+    public void testBackendForName() {
+        assertEquals("incremental", SeedSearchBackend.forName("incremental").getName());
+        assertThrows(IllegalArgumentException.class, () -> SeedSearchBackend.forName("quantum"));
+    }
+    
+    @Test
+    public void testSearchForZeroBudget() {
+        SeedSearch.Progress progress = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(0, 30_000)
+                .build()
+                .searchFor(0, TimeUnit.SECONDS);
+        assertFalse(progress.isComplete());
+        assertEquals(0, progress.getCoveredCount());
+        assertTrue(progress.getSeeds().isEmpty());
+    }
+    
+    @Test
+    public void testSearchForInstallments() {
+        SeedSearch search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(0, 30_000)
+                .withExpectedDelta(villager1Delta)
+                .build();
+        SeedSearch.Progress progress = search.searchFor(0, TimeUnit.SECONDS);
+        long covered = 0;
+        while(!progress.isComplete()) {
+            progress = search.searchFor(1, TimeUnit.MILLISECONDS);
+            assertTrue(progress.getCoveredCount() >= covered);
+            covered = progress.getCoveredCount();
+        }
+        assertEquals(30_000, progress.getCoveredCount());
+        List<SeedSearch.Range> ranges = progress.getCoveredRanges().get(new RNG().getSeed());
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(30_000, ranges.get(0).getEnd());
+        assertEquals(1, progress.getSeeds().size());
+        RNG seed = progress.getSeeds().iterator().next();
+        assertEquals(villager1Seed, seed.getSeed());
+        assertEquals(villager1Delta, seed.getDelta());
+        assertTrue(ranges.get(0).containsHit(seed));
+    }
+    
+    @Test
+    public void testCoveredRangeContainsHit() {
+        //the seed at offset d of the search space has delta d + 1
+        SeedSearch search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(villager1Delta - 1, villager1Delta)
+                .build();
+        SeedSearch.Progress progress = search.searchFor(1, TimeUnit.MINUTES);
+        assertTrue(progress.isComplete());
+        SeedSearch.Range range = progress.getCoveredRanges().get(new RNG().getSeed()).get(0);
+        RNG seed = progress.getSeeds().iterator().next();
+        assertEquals(villager1Delta, seed.getDelta());
+        assertFalse(range.contains(seed.getDelta()));
+        assertTrue(range.containsHit(seed));
+        assertFalse(range.containsHit(new RNG(villager1Seed, villager1Delta + 1)));
+    }
+    
+    @Test
+    public void testExpectedDeltaKeptAcrossSpaceChange() {
+        SeedSearch search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withExpectedDelta(0)
+                .withSpace(1_000, 2_000)
+                .build();
+        assertEquals(0, search.getExpectedDelta());
+        search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withSpace(1_000, 2_000)
+                .build();
+        assertEquals(1_000, search.getExpectedDelta());
+    }
+    
+    @Test
+    public void testSearchForExpectedDeltaFirst() {
+        //searching outward from the expected delta finds the seed long before the whole space is covered
+        SeedSearch search = new SeedSearch.Builder(playersDeck, drawnCards)
+                .withExpectedDelta(villager1Delta + 500_000)
+                .withSpace(0, SeedSearch.DEFAULT_SEARCH_SPACE)
+                .build();
+        SeedSearch.Progress progress;
+        do {
+            progress = search.searchFor(50, TimeUnit.MILLISECONDS);
+        } while(progress.getSeeds().isEmpty());
+        assertFalse(progress.isComplete());
+        assertTrue(progress.getCoveredCount() < SeedSearch.DEFAULT_SEARCH_SPACE / 2);
+        assertEquals(villager1Seed, progress.getSeeds().iterator().next().getSeed());
+    }
+    
+    @Test
+    public void testNoInitialSeeds() {
+        assertThrows(IllegalArgumentException.class, () -> new SeedSearch.Builder(playersDeck, drawnCards)
+                .withInitialSeeds(Collections.emptyList()));
+    }
+    
+}